@@ -0,0 +1,47 @@
+package thud;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The Board and Player copy constructors, the Player copy also copies its move log and undo stack.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CopyBenchmark {
+	@Param({"0", "60"})
+	int plies;
+
+	private Player player;
+
+	@Setup
+	public void setUp() {
+		player = new Player(new Board());
+		Positions.randomGame(player, Positions.SEED, plies);
+	}
+
+	@Benchmark
+	public Board copyBoard() {
+		return new Board(player.getBoard());
+	}
+
+	@Benchmark
+	public Player copyPlayer() {
+		return new Player(player);
+	}
+}
@@ -0,0 +1,53 @@
+package thud;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Player.getPossibleMoves for each side, from the opening to the late middle game.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoveGenerationBenchmark {
+	// random plies played from the opening
+	@Param({"0", "20", "60", "120"})
+	int plies;
+
+	private Player player;
+	private final PlayState dwarfTurn = new PlayState(BoardStates.DWARF, false);
+	private final PlayState trollTurn = new PlayState(BoardStates.TROLL, false);
+	private final IntList moves = new IntList();
+
+	@Setup
+	public void setUp() {
+		player = new Player(new Board());
+		Positions.randomGame(player, Positions.SEED, plies);
+	}
+
+	@Benchmark
+	public int dwarfMoves() {
+		player.getPossibleMoves(dwarfTurn, moves);
+		return moves.size();
+	}
+
+	@Benchmark
+	public int trollMoves() {
+		player.getPossibleMoves(trollTurn, moves);
+		return moves.size();
+	}
+}
@@ -0,0 +1,67 @@
+package thud;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Playing and taking back a move, cycling through every legal move of the position.  play checks the move and
+ * logs it like a human move, playTrusted is the search's unchecked path.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlayBenchmark {
+	@Param({"0", "40"})
+	int plies;
+
+	private Player player;
+	private PlayState turn;
+	private int[] moves;
+	private int next;
+
+	@Setup
+	public void setUp() {
+		player = new Player(new Board());
+		turn = Positions.randomGame(player, Positions.SEED, plies);
+		IntList legal = new IntList();
+		player.getPossibleMoves(turn, legal);
+		moves = legal.toArray();
+	}
+
+	private int nextMove() {
+		int move = moves[next];
+		if (++next == moves.length)
+			next = 0;
+		return move;
+	}
+
+	@Benchmark
+	public long play() {
+		player.play(turn, nextMove());
+		long hash = player.getBoard().getHash();
+		player.undo(turn);
+		return hash;
+	}
+
+	@Benchmark
+	public long playTrusted() {
+		player.playTrusted(turn, nextMove());
+		long hash = player.getBoard().getHash();
+		player.undo(turn);
+		return hash;
+	}
+}
@@ -0,0 +1,57 @@
+package thud;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * MonteCarloPlay playOuts from the opening on a single search thread: selection, expansion, simulation and
+ * backprop, with each playout policy.  Every iteration starts from an empty tree.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PlayOutBenchmark {
+	// far more than an iteration adds, so the tree never has to be pruned
+	private static final int MAX_NODES = 1 << 20;
+
+	@Param({"uniform", "capture", "weighted"})
+	String policy;
+
+	private MonteCarloPlay ai;
+	private MonteCarloPlay.SearchTree tree;
+	private MonteCarloPlay.Worker worker;
+
+	@Setup(Level.Iteration)
+	public void setUp() {
+		ai = new MonteCarloPlay(BoardStates.DWARF, 1, false, MAX_NODES);
+		ai.setPlayoutPolicy(PlayoutPolicy.named(policy));
+		tree = ai.trees[0];
+		worker = tree.workers[0];
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDown() {
+		ai.shutdown();
+	}
+
+	@Benchmark
+	public void playOut() {
+		tree.playOut(worker);
+	}
+}
@@ -0,0 +1,53 @@
+package thud;
+
+import java.util.Random;
+
+/**
+ * Reproducible positions for the benchmarks, reached by playing seeded random games from the standard opening.
+ */
+final class Positions {
+	static final long SEED = 20170616L;
+
+	private Positions() {
+	}
+
+	// Plays up to plies random moves on player, fewer if the game ends first, and returns the play state reached.
+	static PlayState randomGame(Player player, long seed, int plies) {
+		Random rand = new Random(seed);
+		PlayState turn = player.initializeGame();
+		for (int i = 0; i < plies && !isOver(player); i++) {
+			int move = player.randomMove(turn, rand);
+			if (move == Move.NONE)
+				break;
+			player.play(turn, move);
+		}
+		return turn;
+	}
+
+	// As randomGame, but the trolls avoid the dwarfs whenever they can, so the game lasts long enough for big logs.
+	static PlayState quietGame(Player player, long seed, int plies) {
+		Random rand = new Random(seed);
+		PlayState turn = player.initializeGame();
+		IntList moves = new IntList();
+		IntList quiet = new IntList();
+		for (int i = 0; i < plies && !isOver(player); i++) {
+			player.getPossibleMoves(turn, moves);
+			if (moves.isEmpty())
+				break;
+
+			quiet.clear();
+			for (int j = 0; j < moves.size(); j++) {
+				int move = moves.get(j);
+				if (turn.isTurn(BoardStates.DWARF) || player.movePrior(move) == 0)
+					quiet.add(move);
+			}
+			IntList choices = quiet.isEmpty() ? moves : quiet;
+			player.play(turn, choices.get(rand.nextInt(choices.size())));
+		}
+		return turn;
+	}
+
+	private static boolean isOver(Player player) {
+		return player.getBoard().getNumDwarfs() == 0 || player.getBoard().getNumTrolls() == 0;
+	}
+}
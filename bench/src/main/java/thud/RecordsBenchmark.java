@@ -0,0 +1,70 @@
+package thud;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Loading a two round save file and replaying it onto a fresh Player, for logs of up to plies moves a round.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecordsBenchmark {
+	@Param({"100", "1000", "5000"})
+	int plies;
+
+	private Path file;
+	private RecordsManager loaded;
+
+	@Setup
+	public void setUp() throws IOException {
+		RecordsManager records = new RecordsManager();
+		for (int round = 0; round < 2; round++) {
+			Player player = new Player(new Board());
+			Positions.quietGame(player, Positions.SEED + round, plies);
+			records.addRound(player);
+		}
+		file = Files.createTempFile("thud-bench", ".txt");
+		records.saveFile(file.toString());
+
+		loaded = new RecordsManager();
+		loaded.loadFile(file.toString());
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(file);
+	}
+
+	@Benchmark
+	public RecordsManager loadFile() throws IOException {
+		RecordsManager records = new RecordsManager();
+		records.loadFile(file.toString());
+		return records;
+	}
+
+	@Benchmark
+	public Player replayRecords() {
+		Player player = new Player(new Board());
+		loaded.replayRecords(player, new PlayState());
+		return player;
+	}
+}
@@ -0,0 +1,293 @@
+package thud;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Iterative deepening alpha-beta (negamax) search, an alternative to MonteCarloPlay for when move times have to be
+ * predictable: selectPlay searches one ply deeper at a time until the move time runs out or maxDepth is reached,
+ * and plays the best move of the last depth it finished.  With the same position, depth and move time it plays the
+ * same move, there is no randomness.
+ *
+ * The search runs on the engine's own board, with Player.playTrusted and undo like MonteCarloPlay, and uses:
+ *     a transposition table of bounds and best moves, keyed by Player.getPositionKey
+ *     move ordering: the table's best move, then captures and hurls (best Player.movePrior first), then the two
+ *                    killer moves of the ply, then quiet moves by their history score
+ *     evaluation:    material at calculateScores' values plus MOBILITY_WEIGHT per legal move, from the dwarfs'
+ *                    side, negated for the trolls
+ * A capture's remove turn belongs to the same side, so it is searched without changing sides or using up depth,
+ * and the search never stops in the middle of one.
+ */
+public class AlphaBetaPlay implements Engine {
+	public static final Duration DEFAULT_MOVE_TIME = Duration.ofSeconds(2);
+	public static final int DEFAULT_MAX_DEPTH = 32;
+
+	// material is counted in tenths of a dwarf, so a legal move is worth a tenth of a dwarf
+	static final int MOBILITY_WEIGHT = 1;
+
+	static final int TABLE_SIZE_LOG2 = 18;
+
+	private static final int INFINITY = 1000000;
+	// bound types of table entries
+	private static final int EXACT = 0;
+	private static final int LOWER = 1;
+	private static final int UPPER = 2;
+
+	// move ordering scores, above any history score
+	private static final int CAPTURE_ORDER = 1 << 29;
+	private static final int KILLER_ORDER = 1 << 28;
+
+	// the clock and stop flag are checked every this many positions
+	private static final int CHECK_INTERVAL = 1024;
+
+	private final Player player = new Player(new Board());
+	private final PlayState playState = player.initializeGame();
+	private final Duration moveTime;
+	private final int maxDepth;
+
+	// table entries: the full key and the best move, score, depth and bound type packed into a long
+	private final long[] tableKeys = new long[1 << TABLE_SIZE_LOG2];
+	private final long[] tableData = new long[1 << TABLE_SIZE_LOG2];
+
+	// remove turns don't use up depth, so a search can be up to twice as many plies long
+	private final IntList[] moveLists;
+	private final int[][] orderScores;
+	private final int[][] killers;
+	// indexed by side, from square and to square
+	private final int[] history = new int[2 * BitBoard.SQUARES * BitBoard.SQUARES];
+
+	// for counting each side's moves whatever the turn, see evaluate
+	private final PlayState dwarfTurn = new PlayState(BoardStates.DWARF, false);
+	private final PlayState trollTurn = new PlayState(BoardStates.TROLL, false);
+
+	private BooleanSupplier stop;
+	private long deadline;
+	private int iterationDepth;
+	private boolean aborted;
+	private int nodes;
+	private int rootBest;
+
+	public AlphaBetaPlay() {
+		this(DEFAULT_MOVE_TIME, DEFAULT_MAX_DEPTH);
+	}
+
+	// The depth reached in moveTime depends on the machine, a small maxDepth with a generous moveTime makes the
+	// moves the same everywhere.
+	public AlphaBetaPlay(Duration moveTime, int maxDepth) {
+		if (moveTime.isNegative() || moveTime.isZero())
+			throw new IllegalArgumentException("Move time must be positive");
+		if (maxDepth < 1)
+			throw new IllegalArgumentException("Depth must be at least one");
+
+		this.moveTime = moveTime;
+		this.maxDepth = maxDepth;
+		int maxPly = 2 * maxDepth + 2;
+		moveLists = new IntList[maxPly];
+		for (int i = 0; i < maxPly; i++)
+			moveLists[i] = new IntList();
+		orderScores = new int[maxPly][];
+		killers = new int[maxPly][2];
+	}
+
+	@Override
+	public void opponentPlay(int move) {
+		advance(move);
+	}
+
+	@Override
+	public int selectPlay() {
+		int move = bestPlay(() -> false);
+		if (move != Move.NONE)
+			advance(move);
+		return move;
+	}
+
+	@Override
+	public void advance(int move) {
+		player.play(playState, move);
+	}
+
+	// The first depth always finishes whatever the clock says, so there is a move to play unless stop says otherwise.
+	@Override
+	public int bestPlay(BooleanSupplier stop) {
+		this.stop = stop;
+		deadline = System.nanoTime() + moveTime.toNanos();
+		aborted = false;
+		nodes = 0;
+		for (int[] plyKillers : killers)
+			Arrays.fill(plyKillers, Move.NONE);
+		// keep what history says about this position's neighbourhood, but let the new search outweigh it
+		for (int i = 0; i < history.length; i++)
+			history[i] >>= 2;
+
+		int best = Move.NONE;
+		for (iterationDepth = 1; iterationDepth <= maxDepth; iterationDepth++) {
+			rootBest = Move.NONE;
+			search(iterationDepth, 0, -INFINITY, INFINITY);
+			if (aborted)
+				break;
+			best = rootBest;
+			if (best == Move.NONE || System.nanoTime() - deadline >= 0)
+				break;
+		}
+
+		return stop.getAsBoolean() ? Move.NONE : best;
+	}
+
+	private boolean shouldStop() {
+		return stop.getAsBoolean() || (iterationDepth > 1 && System.nanoTime() - deadline >= 0);
+	}
+
+	private int search(int depth, int ply, int alpha, int beta) {
+		if ((++nodes & (CHECK_INTERVAL - 1)) == 0 && shouldStop())
+			aborted = true;
+		if (aborted)
+			return 0;
+
+		Board board = player.getBoard();
+		if (board.getNumDwarfs() == 0 || board.getNumTrolls() == 0)
+			return evaluate();
+		// a capture isn't over until its remove turn is played
+		if (depth <= 0 && !playState.isRemoveTurn())
+			return evaluate();
+
+		long key = player.getPositionKey(playState);
+		int slot = (int) (key ^ (key >>> 32)) & (tableKeys.length - 1);
+		int tableMove = Move.NONE;
+		if (tableKeys[slot] == key) {
+			long data = tableData[slot];
+			tableMove = (int) (data >> 32);
+			// at the root only the move is used, the search has to come up with a move of its own
+			if (ply > 0 && entryDepth(data) >= depth) {
+				int score = entryScore(data);
+				int bound = entryBound(data);
+				if (bound == EXACT)
+					return score;
+				if (bound == LOWER)
+					alpha = Math.max(alpha, score);
+				else
+					beta = Math.min(beta, score);
+				if (alpha >= beta)
+					return score;
+			}
+		}
+
+		IntList moves = moveLists[ply];
+		player.getPossibleMoves(playState, moves);
+		if (moves.isEmpty())
+			return evaluate();
+		int[] scores = orderScores(moves, ply, tableMove);
+
+		BoardStates mover = playState.getTurn();
+		int historyBase = (mover == BoardStates.TROLL) ? BitBoard.SQUARES * BitBoard.SQUARES : 0;
+		int alphaStart = alpha;
+		int best = -INFINITY;
+		int bestMove = Move.NONE;
+		for (int i = 0; i < moves.size(); i++) {
+			selectNext(moves, scores, i);
+			int move = moves.get(i);
+
+			player.playTrusted(playState, move);
+			int score;
+			if (playState.getTurn() == mover)
+				score = search(depth, ply + 1, alpha, beta);  // remove turn, same side and same depth
+			else
+				score = -search(depth - 1, ply + 1, -beta, -alpha);
+			player.undo(playState);
+			if (aborted)
+				return 0;
+
+			if (score > best) {
+				best = score;
+				bestMove = move;
+				if (ply == 0)
+					rootBest = move;
+				if (score > alpha)
+					alpha = score;
+			}
+			if (alpha >= beta) {
+				if (scores[i] < KILLER_ORDER) {
+					// a quiet move that refutes the previous one, worth trying early in sibling positions
+					int[] plyKillers = killers[ply];
+					if (plyKillers[0] != move) {
+						plyKillers[1] = plyKillers[0];
+						plyKillers[0] = move;
+					}
+					history[historyBase + Move.from(move) * BitBoard.SQUARES + Move.to(move)] += depth * depth;
+				}
+				break;
+			}
+		}
+
+		int bound = (best <= alphaStart) ? UPPER : (best >= beta) ? LOWER : EXACT;
+		tableKeys[slot] = key;
+		tableData[slot] = ((long) bestMove << 32) | ((best & 0xFFFFL) << 16) | (Math.max(depth, 0) << 2) | bound;
+		return best;
+	}
+
+	private static int entryScore(long data) {
+		return (short) (data >>> 16);
+	}
+
+	private static int entryDepth(long data) {
+		return (int) (data >>> 2) & 0x3FFF;
+	}
+
+	private static int entryBound(long data) {
+		return (int) data & 0x3;
+	}
+
+	// ordering scores for moves, by the scheme in the class comment
+	private int[] orderScores(IntList moves, int ply, int tableMove) {
+		int[] scores = orderScores[ply];
+		if (scores == null || scores.length < moves.size())
+			scores = orderScores[ply] = new int[Math.max(moves.size(), 64)];
+
+		boolean trolls = playState.isTurn(BoardStates.TROLL);
+		int historyBase = trolls ? BitBoard.SQUARES * BitBoard.SQUARES : 0;
+		int[] plyKillers = killers[ply];
+		for (int i = 0; i < moves.size(); i++) {
+			int move = moves.get(i);
+			int command = Move.command(move);
+			// a troll move next to dwarfs is a capture too, its remove turn follows
+			int prior = (command != Move.MOVE || trolls) ? player.movePrior(move) : 0;
+			if (move == tableMove)
+				scores[i] = Integer.MAX_VALUE;
+			else if (command != Move.MOVE || prior > 0)
+				scores[i] = CAPTURE_ORDER + prior;
+			else if (move == plyKillers[0] || move == plyKillers[1])
+				scores[i] = KILLER_ORDER;
+			else
+				scores[i] = Math.min(history[historyBase + Move.from(move) * BitBoard.SQUARES + Move.to(move)],
+						KILLER_ORDER - 1);
+		}
+		return scores;
+	}
+
+	// moves the best scored of moves[from..] to from, so moves are only sorted as far as the search gets
+	private static void selectNext(IntList moves, int[] scores, int from) {
+		int best = from;
+		for (int i = from + 1; i < moves.size(); i++) {
+			if (scores[i] > scores[best])
+				best = i;
+		}
+		if (best != from) {
+			int move = moves.get(best);
+			moves.set(best, moves.get(from));
+			moves.set(from, move);
+			int score = scores[best];
+			scores[best] = scores[from];
+			scores[from] = score;
+		}
+	}
+
+	// the position's worth to the side to move
+	private int evaluate() {
+		Board board = player.getBoard();
+		int dwarfs = board.getNumDwarfs() * Player.DWARF_POINTS - board.getNumTrolls() * Player.TROLL_POINTS;
+		if (board.getNumDwarfs() > 0 && board.getNumTrolls() > 0)
+			dwarfs += MOBILITY_WEIGHT * (player.countPossibleMoves(dwarfTurn) - player.countPossibleMoves(trollTurn));
+		return playState.isTurn(BoardStates.DWARF) ? dwarfs : -dwarfs;
+	}
+}
@@ -0,0 +1,211 @@
+package thud;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Headless engine against engine matches, for checking that a change to an engine keeps its playing strength.
+ *
+ * Games run side by side, one per pool thread, each between fresh engines.  A game is two rounds like in Main:
+ * engine A is player 1 and plays the dwarfs in round 1 and the trolls in round 2, each round is scored with
+ * Player.calculateScores and the player with more points over both rounds wins.  A round ends when a side is
+ * wiped out, the side to move has no move, or after MAX_ROUND_PLIES plies.
+ *
+ * Usage: Arena engineA engineB games [threads]
+ * with engines named as in named.
+ */
+public final class Arena {
+	static final int MAX_ROUND_PLIES = 300;
+	// per move time of "alphabeta", short enough for thousands of games
+	static final Duration MOVE_TIME = Duration.ofMillis(100);
+
+	private final Function<BoardStates, Engine> engineA;
+	private final Function<BoardStates, Engine> engineB;
+	private final int threads;
+
+	public Arena(Function<BoardStates, Engine> engineA, Function<BoardStates, Engine> engineB, int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("Need at least one thread");
+
+		this.engineA = engineA;
+		this.engineB = engineB;
+		this.threads = threads;
+	}
+
+	// "mcts" or "alphabeta" like Engine.named, but sized for many games at once: one search thread per MonteCarloPlay
+	// and MOVE_TIME per alpha-beta move.  "mcts-rave" is "mcts" with RAVE on, for checking whether it pays.
+	public static Function<BoardStates, Engine> named(String name) {
+		switch (name) {
+			case "mcts":
+				return side -> new MonteCarloPlay(side, 1);
+			case "mcts-rave":
+				return side -> {
+					MonteCarloPlay ai = new MonteCarloPlay(side, 1);
+					ai.setRave(true);
+					return ai;
+				};
+			case "alphabeta":
+				return side -> new AlphaBetaPlay(MOVE_TIME, AlphaBetaPlay.DEFAULT_MAX_DEPTH);
+			default:
+				return Engine.named(name);
+		}
+	}
+
+	public Result play(int games) {
+		if (games < 1)
+			throw new IllegalArgumentException("Need at least one game");
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+			Thread thread = new Thread(r, "thud-arena");
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			long start = System.nanoTime();
+			List<Future<Integer>> results = new ArrayList<>();
+			for (int i = 0; i < games; i++)
+				results.add(pool.submit(this::playGame));
+
+			int wins = 0, draws = 0;
+			for (Future<Integer> result : results) {
+				int margin = result.get();
+				if (margin > 0)
+					wins++;
+				else if (margin == 0)
+					draws++;
+			}
+			return new Result(wins, draws, games - wins - draws, (System.nanoTime() - start) / 1e9);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while playing", ex);
+		} catch (ExecutionException ex) {
+			throw new IllegalStateException("Game failed", ex.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	// plays both rounds of a game, returns engine A's points minus engine B's
+	int playGame() {
+		int margin = 0;
+		for (int round = 1; round <= 2; round++) {
+			Player player = new Player(new Board());
+			PlayState turn = player.initializeGame();
+			Engine dwarfs = ((round == 1) ? engineA : engineB).apply(BoardStates.DWARF);
+			Engine trolls = ((round == 1) ? engineB : engineA).apply(BoardStates.TROLL);
+			try {
+				playRound(player, turn, dwarfs, trolls);
+			} finally {
+				dwarfs.shutdown();
+				trolls.shutdown();
+			}
+
+			// player 1 (engine A) scores in slot 0 in both rounds
+			player.calculateScores(round);
+			margin += player.getScores()[0] - player.getScores()[1];
+		}
+		return margin;
+	}
+
+	private static void playRound(Player player, PlayState turn, Engine dwarfs, Engine trolls) {
+		Board board = player.getBoard();
+		for (int ply = 0; ply < MAX_ROUND_PLIES; ply++) {
+			if (board.getNumDwarfs() == 0 || board.getNumTrolls() == 0)
+				return;
+
+			boolean dwarfTurn = turn.isTurn(BoardStates.DWARF);
+			int move = (dwarfTurn ? dwarfs : trolls).selectPlay();
+			if (move == Move.NONE)
+				return;
+			player.play(turn, move);
+			(dwarfTurn ? trolls : dwarfs).opponentPlay(move);
+		}
+	}
+
+	/**
+	 * Outcome of a match from engine A's side, with its Elo difference to engine B estimated from the score
+	 * (wins plus half the draws, per game).  The confidence interval is the normal approximation, from the
+	 * spread of the per game scores.
+	 */
+	public static final class Result {
+		public final int wins;
+		public final int draws;
+		public final int losses;
+		public final double seconds;
+
+		Result(int wins, int draws, int losses, double seconds) {
+			this.wins = wins;
+			this.draws = draws;
+			this.losses = losses;
+			this.seconds = seconds;
+		}
+
+		public int games() {
+			return wins + draws + losses;
+		}
+
+		public double score() {
+			return (wins + 0.5 * draws) / games();
+		}
+
+		public double elo() {
+			return elo(score());
+		}
+
+		// bounds of the Elo difference for z standard errors either side of the score, 1.96 for 95%
+		public double eloLow(double z) {
+			return elo(score() - z * standardError());
+		}
+
+		public double eloHigh(double z) {
+			return elo(score() + z * standardError());
+		}
+
+		public double gamesPerSecond() {
+			return games() / seconds;
+		}
+
+		private double standardError() {
+			double score = score();
+			double variance = (wins * (1 - score) * (1 - score) + draws * (0.5 - score) * (0.5 - score)
+					+ losses * score * score) / games();
+			return Math.sqrt(variance / games());
+		}
+
+		// infinite for a clean sweep either way
+		private static double elo(double score) {
+			if (score <= 0)
+				return Double.NEGATIVE_INFINITY;
+			if (score >= 1)
+				return Double.POSITIVE_INFINITY;
+			return 400 * Math.log10(score / (1 - score));
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d games: %d wins, %d draws, %d losses (win %.1f%%, draw %.1f%%)\n"
+							+ "Elo %+.0f, 95%% confidence %+.0f to %+.0f\n"
+							+ "%.2f games per second",
+					games(), wins, draws, losses, 100.0 * wins / games(), 100.0 * draws / games(),
+					elo(), eloLow(1.96), eloHigh(1.96), gamesPerSecond());
+		}
+	}
+
+	public static void main(String[] args) {
+		if (args.length < 3 || args.length > 4) {
+			System.err.println("Proper Usage: Arena engineA engineB games [threads], engines are mcts, mcts-rave or alphabeta");
+			System.exit(1);
+		}
+
+		int threads = (args.length == 4) ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+		Arena arena = new Arena(named(args[0]), named(args[1]), threads);
+		System.out.printf("%s against %s\n", args[0], args[1]);
+		System.out.println(arena.play(Integer.parseInt(args[2])));
+	}
+}
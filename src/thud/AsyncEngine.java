@@ -0,0 +1,87 @@
+package thud;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Non blocking front end for an Engine, MonteCarloPlay by default.
+ *
+ * Calls return straight away and are queued on a single control thread, so they are applied to the search in the
+ * order they were made.  Whenever it has nothing else to do the control thread ponders (see Engine.ponder): a
+ * MonteCarloPlay keeps searching from the current position, up to maxPonderNodes nodes, so time the opponent spends
+ * thinking becomes search time.  The subtree under the move the opponent then plays is kept by opponentPlay and
+ * the rest discarded.
+ */
+public class AsyncEngine {
+	public static final int DEFAULT_PONDER_NODES = 100000;
+
+	private final Engine ai;
+	private final int maxPonderNodes;
+	private final ExecutorService control;
+	// stop flag of the latest ponder task, running or still queued
+	private AtomicBoolean pondering = new AtomicBoolean(true);
+
+	public AsyncEngine(BoardStates side) {
+		this(new MonteCarloPlay(side), DEFAULT_PONDER_NODES);
+	}
+
+	public AsyncEngine(Engine ai, int maxPonderNodes) {
+		this.ai = ai;
+		this.maxPonderNodes = maxPonderNodes;
+		control = Executors.newSingleThreadExecutor(r -> {
+			Thread thread = new Thread(r, "thud-engine");
+			thread.setDaemon(true);
+			return thread;
+		});
+		startPondering();
+	}
+
+	// tells the ai about the opponent's move, completes once the tree has moved on
+	public CompletableFuture<Void> opponentPlay(int move) {
+		stopPondering();
+		CompletableFuture<Void> done = CompletableFuture.runAsync(() -> ai.opponentPlay(move), control);
+		startPondering();
+		return done;
+	}
+
+	// Completes with the ai's move in text form (see Move.toString), for the caller to play, or with null if the ai
+	// has no move.  Cancelling the future abandons the search and leaves the ai's position as it was.
+	public CompletableFuture<String> selectPlay() {
+		stopPondering();
+		CompletableFuture<String> result = new CompletableFuture<>();
+		control.execute(() -> {
+			try {
+				int move = ai.bestPlay(result::isDone);
+				// Move.NONE is also what a cancelled search returns, completing an already cancelled future does nothing
+				if (move == Move.NONE)
+					result.complete(null);
+				// once completed the future can't be cancelled, so only then commit to the move
+				else if (result.complete(Move.toString(move)))
+					ai.advance(move);
+			} catch (RuntimeException ex) {
+				result.completeExceptionally(ex);
+			}
+		});
+		startPondering();
+		return result;
+	}
+
+	// stops all searching once queued calls are done, the engine can't be used afterwards
+	public void shutdown() {
+		stopPondering();
+		control.execute(ai::shutdown);
+		control.shutdown();
+	}
+
+	private void startPondering() {
+		AtomicBoolean stop = new AtomicBoolean();
+		pondering = stop;
+		control.execute(() -> ai.ponder(maxPonderNodes, stop::get));
+	}
+
+	private void stopPondering() {
+		pondering.set(true);
+	}
+}
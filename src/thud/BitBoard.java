@@ -0,0 +1,164 @@
+package thud;
+
+import java.util.Arrays;
+
+/**
+ * A set of board squares packed into bits, used by Board to hold the position as one set per piece type.
+ *
+ * Squares are numbered row major (square = row*15 + col), so the 225 squares fit in four longs.
+ * Bits 225 to 255 of the last word are never set.
+ *
+ * Also holds the static board geometry used for mask based queries: the 8 neighbours of every square and the
+ * rays leaving every square in each of the 8 directions.  Directions are numbered so that 7-dir is the opposite.
+ * Rays are also kept as lists of squares, ordered outward, for move generation walking a line in one pass.
+ */
+final class BitBoard {
+	static final int SIZE = 15;
+	static final int SQUARES = SIZE * SIZE;
+	static final int WORDS = 4;
+
+	static final int[] DIR_ROW = {-1, -1, -1,  0, 0,  1, 1, 1};
+	static final int[] DIR_COL = {-1,  0,  1, -1, 1, -1, 0, 1};
+
+	// NEIGHBOURS[sq*WORDS + w] and RAYS[(sq*8 + dir)*WORDS + w], rays exclude their starting square
+	private static final long[] NEIGHBOURS = new long[SQUARES * WORDS];
+	private static final long[] RAYS = new long[SQUARES * 8 * WORDS];
+	// STEPS[sq*8 + dir] is the adjacent square in direction dir, or -1 off the edge of the board
+	private static final int[] STEPS = new int[SQUARES * 8];
+	// RAY_SQUARES[sq*8 + dir] lists the squares of the ray nearest first, up to the first forbidden square
+	private static final int[][] RAY_SQUARES = new int[SQUARES * 8][];
+
+	static {
+		for (int sq = 0; sq < SQUARES; sq++) {
+			int row = row(sq), col = col(sq);
+			for (int dir = 0; dir < 8; dir++) {
+				int r = row + DIR_ROW[dir];
+				int c = col + DIR_COL[dir];
+				STEPS[sq * 8 + dir] = BoardPoint.isOnBoard(r, c) ? square(r, c) : -1;
+				if (BoardPoint.isOnBoard(r, c))
+					setBit(NEIGHBOURS, sq * WORDS, square(r, c));
+				int length = 0;
+				boolean open = true;
+				int[] squares = new int[SIZE];
+				while (BoardPoint.isOnBoard(r, c)) {
+					setBit(RAYS, (sq * 8 + dir) * WORDS, square(r, c));
+					// nothing can pass a forbidden square, so the square list stops there
+					open &= isOpen(r, c);
+					if (open)
+						squares[length++] = square(r, c);
+					r += DIR_ROW[dir];
+					c += DIR_COL[dir];
+				}
+				RAY_SQUARES[sq * 8 + dir] = Arrays.copyOf(squares, length);
+			}
+		}
+	}
+
+	final long[] bits = new long[WORDS];
+
+	BitBoard() {
+	}
+
+	BitBoard(BitBoard other) {
+		set(other);
+	}
+
+	static int square(int row, int col) {
+		return row * SIZE + col;
+	}
+	static int row(int square) {
+		return square / SIZE;
+	}
+	static int col(int square) {
+		return square % SIZE;
+	}
+
+	static int step(int square, int dir) {
+		return STEPS[square * 8 + dir];
+	}
+
+	// shared table, callers must not modify the returned array
+	static int[] ray(int square, int dir) {
+		return RAY_SQUARES[square * 8 + dir];
+	}
+
+	static int opposite(int dir) {
+		return 7 - dir;
+	}
+
+	// true if the square is not one of the forbidden corner squares
+	private static boolean isOpen(int row, int col) {
+		int r = Math.min(row, SIZE - 1 - row);
+		int c = Math.min(col, SIZE - 1 - col);
+		return r + c >= 5;
+	}
+
+	// returns the direction index leading from one square to the other, or -1 if they do not share a line
+	static int direction(int from, int to) {
+		int dr = row(to) - row(from);
+		int dc = col(to) - col(from);
+		if (from == to || (dr != 0 && dc != 0 && Math.abs(dr) != Math.abs(dc)))
+			return -1;
+		// 3x3 grid of unit steps minus the centre, matches the order of DIR_ROW/DIR_COL
+		int index = (Integer.signum(dr) + 1) * 3 + (Integer.signum(dc) + 1);
+		return (index > 4) ? index - 1 : index;
+	}
+
+	private static void setBit(long[] words, int offset, int square) {
+		words[offset + (square >>> 6)] |= 1L << square;
+	}
+
+	void set(BitBoard other) {
+		System.arraycopy(other.bits, 0, bits, 0, WORDS);
+	}
+
+	void clear() {
+		bits[0] = bits[1] = bits[2] = bits[3] = 0;
+	}
+
+	boolean get(int square) {
+		return (bits[square >>> 6] & (1L << square)) != 0;
+	}
+
+	void set(int square) {
+		bits[square >>> 6] |= 1L << square;
+	}
+
+	void clear(int square) {
+		bits[square >>> 6] &= ~(1L << square);
+	}
+
+	int count() {
+		return Long.bitCount(bits[0]) + Long.bitCount(bits[1]) + Long.bitCount(bits[2]) + Long.bitCount(bits[3]);
+	}
+
+	boolean intersectsNeighbours(int square) {
+		int o = square * WORDS;
+		return ((bits[0] & NEIGHBOURS[o]) | (bits[1] & NEIGHBOURS[o + 1])
+				| (bits[2] & NEIGHBOURS[o + 2]) | (bits[3] & NEIGHBOURS[o + 3])) != 0;
+	}
+
+	// true if any neighbour of square is in none of the given sets
+	static boolean neighbourOutsideAll(int square, BitBoard a, BitBoard b, BitBoard c, BitBoard d) {
+		int o = square * WORDS;
+		for (int w = 0; w < WORDS; w++) {
+			if ((NEIGHBOURS[o + w] & ~(a.bits[w] | b.bits[w] | c.bits[w] | d.bits[w])) != 0)
+				return true;
+		}
+		return false;
+	}
+
+	// true if any square strictly between from and to (which lie on direction dir) is in one of the given sets
+	static boolean betweenIntersectsAny(int from, int to, int dir, BitBoard a, BitBoard b, BitBoard c, BitBoard d) {
+		int fromRay = (from * 8 + dir) * WORDS;
+		int toRay = (to * 8 + dir) * WORDS;
+		for (int w = 0; w < WORDS; w++) {
+			long between = RAYS[fromRay + w] & ~RAYS[toRay + w];
+			if (w == (to >>> 6))
+				between &= ~(1L << to);
+			if ((between & (a.bits[w] | b.bits[w] | c.bits[w] | d.bits[w])) != 0)
+				return true;
+		}
+		return false;
+	}
+}
@@ -1,7 +1,7 @@
 package thud;
 
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedList;
 import java.util.List;
 
 /**
@@ -9,12 +9,47 @@ import java.util.List;
  *
  * Represents the game board, keeps track of current game pieces and positions, allows modification of board
  * Also holds rule and game state agnostic board/piece queries such as is there a clear path between two pieces
+ *
+ * The position is stored as one BitBoard per square state (FREE is the absence of all four),
+ * so adjacency and line of sight queries are mask operations instead of walks over BoardPoints.
+ * A Zobrist key of the piece placement (see Zobrist) is kept up to date on every change.
+ *
+ * Every query and modification also has a square index form (square = row*15 + col) which allocates nothing,
+ * the BoardPoint forms are convenience wrappers over them.
+ *
+ * Each side's pieces are also kept in a PieceList, giving O(1) move/remove and a stable iteration order.
+ *
+ * For the rules' hot queries Board also maintains, on every change, how many dwarfs and trolls neighbour each
+ * square and the length of the unbroken line of same side pieces leaving each square in each direction.
+ * adjacentToAny and lineLength are then lookups instead of scans.
  */
 public class Board {
 
-	private BoardStates[][] board = new BoardStates[15][15];
-	private List<BoardPoint> dwarfs = new LinkedList<>();
-	private List<BoardPoint> trolls = new LinkedList<>();
+	private static final BitBoard FORBIDDEN_SQUARES = new BitBoard();
+
+	static {
+		for (int i=0; i<5; i++) {
+			for (int j=0; j<(5-i); j++) {
+				FORBIDDEN_SQUARES.set(BitBoard.square(i, j));
+				FORBIDDEN_SQUARES.set(BitBoard.square(i, 14 - j));
+				FORBIDDEN_SQUARES.set(BitBoard.square(14 - i, j));
+				FORBIDDEN_SQUARES.set(BitBoard.square(14 - i, 14 - j));
+			}
+		}
+	}
+
+	private final BitBoard dwarfBits = new BitBoard();
+	private final BitBoard trollBits = new BitBoard();
+	private final BitBoard stoneBits = new BitBoard();
+	private final BitBoard forbiddenBits = new BitBoard();
+	private final PieceList dwarfs = new PieceList();
+	private final PieceList trolls = new PieceList();
+	private long hash;
+	// neighbour counts per square, and run lengths indexed [dir*SQUARES + square] (0 if square isn't that side)
+	private final byte[] adjacentDwarfs = new byte[BitBoard.SQUARES];
+	private final byte[] adjacentTrolls = new byte[BitBoard.SQUARES];
+	private final byte[] dwarfRuns = new byte[8 * BitBoard.SQUARES];
+	private final byte[] trollRuns = new byte[8 * BitBoard.SQUARES];
 
 	public Board() {
 		// set board to empty board (no pieces)
@@ -22,45 +57,72 @@ public class Board {
 	}
 
 	public Board(Board other) {
-		initializeBoard();
-		for (int i=0; i<15; i++)
-			this.board[i] = Arrays.copyOf(other.board[i], 15);
-		this.dwarfs = new LinkedList<>(other.dwarfs);
-		this.trolls = new LinkedList<>(other.trolls);
+		this.dwarfBits.set(other.dwarfBits);
+		this.trollBits.set(other.trollBits);
+		this.stoneBits.set(other.stoneBits);
+		this.forbiddenBits.set(other.forbiddenBits);
+		this.dwarfs.set(other.dwarfs);
+		this.trolls.set(other.trolls);
+		this.hash = other.hash;
+		System.arraycopy(other.adjacentDwarfs, 0, adjacentDwarfs, 0, adjacentDwarfs.length);
+		System.arraycopy(other.adjacentTrolls, 0, adjacentTrolls, 0, adjacentTrolls.length);
+		System.arraycopy(other.dwarfRuns, 0, dwarfRuns, 0, dwarfRuns.length);
+		System.arraycopy(other.trollRuns, 0, trollRuns, 0, trollRuns.length);
 	}
 
-	public List<BoardPoint> getTrolls() { return trolls; }
+	// Zobrist key of the pieces on the board, see Player.getPositionKey for the key of a whole position
+	public long getHash() { return hash; }
+
+	// a snapshot, in piece list order, use getTrollList to iterate without allocating
+	public List<BoardPoint> getTrolls() { return toPoints(trolls); }
+	public PieceList getTrollList() { return trolls; }
 	public int getNumTrolls() {
 		return trolls.size();
 	}
 	public void addTroll(BoardPoint pos) {
-		trolls.add(pos);
-		setAtPosition(pos, BoardStates.TROLL);
+		addTroll(pos.getSquare());
+	}
+	public void addTroll(int square) {
+		trolls.add(square);
+		setAtSquare(square, BoardStates.TROLL);
 	}
 
-	public List<BoardPoint> getDwarfs() { return dwarfs; }
+	// a snapshot, in piece list order, use getDwarfList to iterate without allocating
+	public List<BoardPoint> getDwarfs() { return toPoints(dwarfs); }
+	public PieceList getDwarfList() { return dwarfs; }
 	public int getNumDwarfs() {
 		return dwarfs.size();
 	}
 	public void addDwarf(BoardPoint pos) {
-		dwarfs.add(pos);
-		setAtPosition(pos, BoardStates.DWARF);
+		addDwarf(pos.getSquare());
+	}
+	public void addDwarf(int square) {
+		dwarfs.add(square);
+		setAtSquare(square, BoardStates.DWARF);
+	}
+
+	private static List<BoardPoint> toPoints(PieceList pieces) {
+		List<BoardPoint> points = new ArrayList<>(pieces.size());
+		for (int i=0; i<pieces.size(); i++)
+			points.add(BoardPoint.at(pieces.get(i)));
+		return points;
 	}
 
 	// Set board to empty board, that is set valid and forbidden cells only
 	// This is correct for Koom Valley Thud and regular Thud, thus here and not in Player
+	// Piece lists are cleared as well, so a reused board never reports pieces that are no longer on it
 	void initializeBoard() {
-		for (int i=0; i<15; i++) {
-			Arrays.fill(board[i], BoardStates.FREE);
-		}
-		for (int i=0; i<5; i++) {
-			for (int j=0; j<(5-i); j++) {
-				board[i][j] = BoardStates.FORBIDDEN;
-				board[i][14 - j] = BoardStates.FORBIDDEN;
-				board[14-i][j] = BoardStates.FORBIDDEN;
-				board[14-i][14-j] = BoardStates.FORBIDDEN;
-			}
-		}
+		dwarfBits.clear();
+		trollBits.clear();
+		stoneBits.clear();
+		forbiddenBits.set(FORBIDDEN_SQUARES);
+		hash = 0;
+		Arrays.fill(adjacentDwarfs, (byte) 0);
+		Arrays.fill(adjacentTrolls, (byte) 0);
+		Arrays.fill(dwarfRuns, (byte) 0);
+		Arrays.fill(trollRuns, (byte) 0);
+		dwarfs.clear();
+		trolls.clear();
 	}
 
 	@Override
@@ -88,7 +150,7 @@ public class Board {
 				}
 				else {
 
-					char c = getSymbol(board[i][j]);
+					char c = getSymbol(getAtSquare(BitBoard.square(i, j)));
 					sb.append(c);
 					sb.append(' ');
 				}
@@ -125,103 +187,183 @@ public class Board {
 		return getAtPosition(new BoardPoint(x,y));
 	}
 	public BoardStates getAtPosition(BoardPoint pos) {
-		return board[pos.row][pos.col];
+		return getAtSquare(pos.getSquare());
+	}
+
+	public boolean isFree(int square) {
+		return !(dwarfBits.get(square) || trollBits.get(square) || stoneBits.get(square) || forbiddenBits.get(square));
+	}
+	public BoardStates getAtSquare(int square) {
+		if (dwarfBits.get(square))
+			return BoardStates.DWARF;
+		if (trollBits.get(square))
+			return BoardStates.TROLL;
+		if (forbiddenBits.get(square))
+			return BoardStates.FORBIDDEN;
+		if (stoneBits.get(square))
+			return BoardStates.STONE;
+		return BoardStates.FREE;
 	}
 
 	void setAtPosition(int x, int y, BoardStates state) {
 		setAtPosition(new BoardPoint(x,y), state);
 	}
 	void setAtPosition(BoardPoint pos, BoardStates state) {
-		board[pos.row][pos.col] = state;
+		setAtSquare(pos.getSquare(), state);
+	}
+	void setAtSquare(int square, BoardStates state) {
+		BoardStates old = getAtSquare(square);
+		hash ^= Zobrist.pieceKey(old, square) ^ Zobrist.pieceKey(state, square);
+		dwarfBits.clear(square);
+		trollBits.clear(square);
+		stoneBits.clear(square);
+		forbiddenBits.clear(square);
+		BitBoard bits = bitsFor(state);
+		if (bits != null)
+			bits.set(square);
+
+		if (old == BoardStates.DWARF || old == BoardStates.TROLL)
+			updateNeighbourhood(old, square, -1);
+		if (state == BoardStates.DWARF || state == BoardStates.TROLL)
+			updateNeighbourhood(state, square, 1);
+	}
+
+	// called after a dwarf or troll was added to (change 1) or removed from (change -1) square
+	private void updateNeighbourhood(BoardStates side, int square, int change) {
+		byte[] adjacent = (side == BoardStates.DWARF) ? adjacentDwarfs : adjacentTrolls;
+		byte[] runs = (side == BoardStates.DWARF) ? dwarfRuns : trollRuns;
+		BitBoard bits = bitsFor(side);
+
+		for (int dir=0; dir<8; dir++) {
+			int next = BitBoard.step(square, dir);
+			if (next >= 0)
+				adjacent[next] += change;
+
+			// recount the run at square and at every piece of the line ending in it
+			int offset = dir * BitBoard.SQUARES;
+			int back = BitBoard.opposite(dir);
+			int run = (change > 0) ? 1 + ((next >= 0) ? runs[offset + next] : 0) : 0;
+			runs[offset + square] = (byte) run;
+			for (int pos = BitBoard.step(square, back); pos >= 0 && bits.get(pos); pos = BitBoard.step(pos, back))
+				runs[offset + pos] = (byte) ++run;
+		}
+	}
+
+	// returns the set holding pieces of the given state, null for FREE (which is the absence of all sets)
+	private BitBoard bitsFor(BoardStates state) {
+		switch (state) {
+			case DWARF:
+				return dwarfBits;
+			case TROLL:
+				return trollBits;
+			case STONE:
+				return stoneBits;
+			case FORBIDDEN:
+				return forbiddenBits;
+			default:
+				return null;
+		}
 	}
 
 	// assumes valid pos (including size and positionOnBoard)
 	public boolean adjacentToAny(BoardStates state, BoardPoint pos) {
+		return adjacentToAny(state, pos.getSquare());
+	}
+	public boolean adjacentToAny(BoardStates state, int square) {
+		if (state == BoardStates.DWARF)
+			return adjacentDwarfs[square] != 0;
+		if (state == BoardStates.TROLL)
+			return adjacentTrolls[square] != 0;
 
-		for (int i=-1; i<=1; i++) {
-			for (int j=-1; j<=1; j++) {
-				// ignore pos
-				if (i==0 && j==0)
-					continue;
-				// don't allow pos[0]+i out of bounds
-				if ((pos.row +i < 0) || (pos.row +i > 14))
-					continue;
-				// don't allow pos[1]+j out of bounds
-				if ((pos.col +j < 0) || (pos.col +j > 14))
-					continue;
-
-				BoardPoint testPos = new BoardPoint(pos.row +i, pos.col +j);
-
-				if (getAtPosition(testPos).equals(state))
-					return true;
-			}
-		}
-		return false;
+		BitBoard bits = bitsFor(state);
+		if (bits == null)
+			return BitBoard.neighbourOutsideAll(square, dwarfBits, trollBits, stoneBits, forbiddenBits);
+		return bits.intersectsNeighbours(square);
+	}
+
+	// number of side's (DWARF or TROLL) pieces next to square
+	public int countAdjacent(BoardStates side, int square) {
+		return (side == BoardStates.DWARF) ? adjacentDwarfs[square] : adjacentTrolls[square];
+	}
+
+	// number of side's (DWARF or TROLL) pieces in an unbroken line starting at square (counted) going in dir
+	public int lineLength(BoardStates side, int square, int dir) {
+		byte[] runs = (side == BoardStates.DWARF) ? dwarfRuns : trollRuns;
+		return runs[dir * BitBoard.SQUARES + square];
 	}
 
 	// assumes valid startPos and endPos (including size and positionOnBoard)
 	public boolean positionsAreLinear(BoardPoint startPos, BoardPoint endPos) {
 		return (startPos.row ==endPos.row) ||
 			   (startPos.col ==endPos.col) ||
-			   ( ((double)Math.abs(startPos.col-endPos.col)) / ((double)Math.abs(startPos.row-endPos.row)) == 1);
+			   (Math.abs(startPos.col-endPos.col) == Math.abs(startPos.row-endPos.row));
 	}
 
+	// true if every square strictly between startPos and endPos is FREE, false if they do not share a line
 	public boolean clearPathBetween(BoardPoint startPos, BoardPoint endPos) {
-	    BoardPoint curPos = new BoardPoint(startPos);
-
-	    int i, j;
-	    // note that the vector components are in terms of startPos -> endPos, thus endPos - startPos is our formula
-	    i = endPos.row - startPos.row;
-	    j = endPos.col - startPos.col;
-
-	    // divided each direction by the length along that direction
-		// getting direction alone, allowing for incremental walking
-	    if (i!=0)
-	    	i = i/Math.abs(i);
-		if (j!=0)
-			j = j/Math.abs(j);
-
-		do {
-		    curPos.row += i;
-		    curPos.col += j;
-			if (!getAtPosition(curPos).equals(BoardStates.FREE))
-				break;
-		} while (!curPos.equals(endPos));
-
-		return (curPos.equals(endPos));
+		return clearPathBetween(startPos.getSquare(), endPos.getSquare());
+	}
+	public boolean clearPathBetween(int start, int end) {
+		int dir = BitBoard.direction(start, end);
+		if (dir < 0)
+			return false;
+		return !BitBoard.betweenIntersectsAny(start, end, dir, dwarfBits, trollBits, stoneBits, forbiddenBits);
 	}
 
 	public void movePiece(BoardPoint startPos, BoardPoint endPos) {
-		BoardStates bs = getAtPosition(startPos);
-		setAtPosition(startPos, BoardStates.FREE);
-		setAtPosition(endPos, bs);
+		movePiece(startPos.getSquare(), endPos.getSquare());
+	}
+	public void movePiece(int start, int end) {
+		BoardStates bs = getAtSquare(start);
 
 		switch (bs) {
 			case TROLL:
-				trolls.remove(startPos);
-				trolls.add(endPos);
+				trolls.move(start, end);
 				break;
 			case DWARF:
-				dwarfs.remove(startPos);
-				dwarfs.add(endPos);
+				dwarfs.move(start, end);
 				break;
 			default:
 				throw new IllegalArgumentException();
 		}
+
+		setAtSquare(start, BoardStates.FREE);
+		setAtSquare(end, bs);
 	}
 
 	public void removePiece(BoardPoint pos) {
-		BoardStates bs = getAtPosition(pos);
+		removePiece(pos.getSquare());
+	}
+	// returns the piece list slot the piece held, pass it to restorePiece to undo the removal
+	public int removePiece(int square) {
+		BoardStates bs = getAtSquare(square);
+		int slot;
 		switch (bs) {
 			case TROLL:
-				trolls.remove(pos);
+				slot = trolls.remove(square);
+				break;
+			case DWARF:
+				slot = dwarfs.remove(square);
+				break;
+			default:
+				throw new IllegalArgumentException();
+		}
+		setAtSquare(square, BoardStates.FREE);
+		return slot;
+	}
+
+	// puts a removed piece back in its old piece list slot, removals must be restored in reverse order
+	public void restorePiece(BoardStates side, int square, int slot) {
+		switch (side) {
+			case TROLL:
+				trolls.restore(square, slot);
 				break;
 			case DWARF:
-				dwarfs.remove(pos);
+				dwarfs.restore(square, slot);
 				break;
 			default:
 				throw new IllegalArgumentException();
 		}
-		setAtPosition(pos, BoardStates.FREE);
+		setAtSquare(square, side);
 	}
 }
@@ -5,16 +5,37 @@ package thud;
  *
  * Represents a position on the game board. Formerly called a position so much of the code takes args named *pos.
  * Many methods take a BoardPoint as argument as a way of making sure input is valid (if constructor works then valid pos)
+ *
+ * BoardPoints are immutable.  Move generation and play work on square indices (row*15 + col) instead,
+ * use at(square) to get the shared BoardPoint for a square when an object is needed.
  */
 public class BoardPoint {
 
-	int row;
-	int col;
+	private static final BoardPoint[] POINTS = new BoardPoint[BitBoard.SQUARES];
+
+	static {
+		for (int square=0; square<BitBoard.SQUARES; square++)
+			POINTS[square] = new BoardPoint(BitBoard.row(square), BitBoard.col(square));
+	}
+
+	final int row;
+	final int col;
 
 	public static boolean isOnBoard(int x, int y) {
 		return (!(x<0 || x>14) && !(y<0 || y>14));
 	}
 
+	// shared instance for a square index, no allocation
+	public static BoardPoint at(int square) {
+		return POINTS[square];
+	}
+
+	public static BoardPoint at(int row, int col) {
+		if (!isOnBoard(row, col))
+			throw new IllegalArgumentException();
+		return POINTS[BitBoard.square(row, col)];
+	}
+
 	public BoardPoint(BoardPoint bp) {
 		this.row = bp.row;
 		this.col = bp.col;
@@ -26,9 +47,11 @@ public class BoardPoint {
 		this.col = col;
 	}
 	public BoardPoint(String s) {
+		if (s.length() < 2)
+			throw new IllegalArgumentException("Position must be a column letter followed by a row number");
 		char col = Character.toUpperCase(s.charAt(0));
-		if (!('A' <= col && col <= 'P'))
-			throw new IllegalArgumentException("Column must be between A and P");
+		if (!('A' <= col && col <= 'O'))
+			throw new IllegalArgumentException("Column must be between A and O");
 
 		int row = Integer.parseInt(s.substring(1));
 		if (!(1 <= row && row <= 15))
@@ -49,20 +72,12 @@ public class BoardPoint {
 		return row;
 	}
 
-	public void setRow(int row) {
-		if (!isOnBoard(row, col))
-			throw new IllegalArgumentException();
-		this.row = row;
-	}
-
 	public int getCol() {
 		return col;
 	}
 
-	public void setCol(int col) {
-		if (!isOnBoard(row, col))
-			throw new IllegalArgumentException();
-		this.col = col;
+	public int getSquare() {
+		return BitBoard.square(row, col);
 	}
 
 	@Override
@@ -75,4 +90,9 @@ public class BoardPoint {
 		if (row != that.row) return false;
 		return col == that.col;
 	}
+
+	@Override
+	public int hashCode() {
+		return getSquare();
+	}
 }
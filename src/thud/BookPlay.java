@@ -0,0 +1,98 @@
+package thud;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Plays from an OpeningBook while the game is in book and hands over to another engine once it leaves it.
+ *
+ * Book moves are answered straight away, without searching.  The engine behind is told about every move either
+ * way, with advance while in book (no point searching a position the book already knows) and the usual
+ * opponentPlay afterwards, so it is ready to take over at the first position the book doesn't know.  The game
+ * stays out of book from then on, even if it transposes back into a book position.
+ */
+public class BookPlay implements Engine {
+	// a move needs this many games in the book before it is trusted over a search
+	public static final int DEFAULT_MIN_GAMES = 4;
+
+	private final OpeningBook book;
+	private final Engine engine;
+	private final int minGames;
+	private final Player player = new Player(new Board());
+	private final PlayState playState = player.initializeGame();
+	private final IntList moves = new IntList();
+	private boolean inBook = true;
+
+	public BookPlay(OpeningBook book, Engine engine) {
+		this(book, engine, DEFAULT_MIN_GAMES);
+	}
+
+	public BookPlay(OpeningBook book, Engine engine, int minGames) {
+		this.book = book;
+		this.engine = engine;
+		this.minGames = minGames;
+	}
+
+	@Override
+	public void opponentPlay(int move) {
+		player.play(playState, move);
+		if (inBook)
+			engine.advance(move);
+		else
+			engine.opponentPlay(move);
+	}
+
+	@Override
+	public int selectPlay() {
+		int move = bookMove();
+		if (move == Move.NONE)
+			return played(engine.selectPlay());
+
+		advance(move);
+		return move;
+	}
+
+	@Override
+	public int bestPlay(BooleanSupplier stop) {
+		int move = bookMove();
+		return (move != Move.NONE) ? move : engine.bestPlay(stop);
+	}
+
+	@Override
+	public void advance(int move) {
+		player.play(playState, move);
+		engine.advance(move);
+	}
+
+	@Override
+	public void ponder(int maxNodes, BooleanSupplier stop) {
+		if (!inBook)
+			engine.ponder(maxNodes, stop);
+	}
+
+	@Override
+	public void shutdown() {
+		engine.shutdown();
+	}
+
+	// the book move for the current position, Move.NONE once out of book
+	private int bookMove() {
+		if (!inBook)
+			return Move.NONE;
+
+		int move = book.bestMove(player.getPositionKey(playState), minGames);
+		// a different position could share the key, only play moves that are legal here
+		player.getPossibleMoves(playState, moves);
+		if (move == Move.NONE || !moves.contains(move)) {
+			inBook = false;
+			return Move.NONE;
+		}
+		return move;
+	}
+
+	// keeps this engine's board in step with a move the engine behind chose and played itself
+	private int played(int move) {
+		if (move != Move.NONE)
+			player.play(playState, move);
+		return move;
+	}
+}
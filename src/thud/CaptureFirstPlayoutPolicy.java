@@ -0,0 +1,47 @@
+package thud;
+
+import java.util.Random;
+
+/**
+ * Epsilon greedy on Player.movePrior: usually the move that takes (or sets up to take) the most material, so
+ * hurls and troll captures actually happen in playouts, but a uniformly random move with probability epsilon.
+ */
+public final class CaptureFirstPlayoutPolicy implements PlayoutPolicy {
+	public static final double DEFAULT_EPSILON = 0.2;
+
+	private final double epsilon;
+	private final IntList moves = new IntList(256);
+
+	public CaptureFirstPlayoutPolicy() {
+		this(DEFAULT_EPSILON);
+	}
+
+	public CaptureFirstPlayoutPolicy(double epsilon) {
+		if (epsilon < 0 || epsilon > 1)
+			throw new IllegalArgumentException("Epsilon must be between 0 and 1");
+		this.epsilon = epsilon;
+	}
+
+	@Override
+	public int selectMove(Player player, PlayState turn, Random rand) {
+		if (rand.nextDouble() < epsilon)
+			return player.randomMove(turn, rand);
+
+		player.getPossibleMoves(turn, moves);
+		int best = Move.NONE;
+		int bestPrior = Integer.MIN_VALUE;
+		int ties = 0;
+		for (int i = 0; i < moves.size(); i++) {
+			int prior = player.movePrior(moves.get(i));
+			if (prior > bestPrior) {
+				best = moves.get(i);
+				bestPrior = prior;
+				ties = 1;
+			} else if (prior == bestPrior && rand.nextInt(++ties) == 0) {
+				// keep a uniform choice among equally good moves
+				best = moves.get(i);
+			}
+		}
+		return best;
+	}
+}
@@ -0,0 +1,48 @@
+package thud;
+
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+/**
+ * A computer player.  An engine keeps its own copy of the game: the opponent's moves are passed in through
+ * opponentPlay, its own come out of selectPlay, and both sides' moves are in the packed form of Move.
+ *
+ * bestPlay/advance split selectPlay into searching and committing to the move, so a front end such as AsyncEngine
+ * can abandon a search without changing the engine's position.
+ */
+public interface Engine {
+	// plays the opponent's move on the engine's copy of the game
+	void opponentPlay(int move);
+
+	// chooses a move for the side to move and plays it on the engine's copy of the game, Move.NONE if there is none
+	int selectPlay();
+
+	// Searches like selectPlay and returns the move without playing it.
+	// Gives up and returns Move.NONE if stop returns true first.
+	int bestPlay(BooleanSupplier stop);
+
+	// plays a move on the engine's copy of the game without searching, for a move from bestPlay
+	void advance(int move);
+
+	// Searches ahead from the current position, up to about maxNodes positions, until stop returns true, so the
+	// opponent's thinking time isn't wasted.  Engines that keep nothing from one move to the next don't.
+	default void ponder(int maxNodes, BooleanSupplier stop) {
+	}
+
+	// stops any threads of the engine, it can't be used afterwards
+	default void shutdown() {
+	}
+
+	// "mcts" (MonteCarloPlay) or "alphabeta" (AlphaBetaPlay), for choosing an engine from the command line.
+	// The function takes the side the engine plays.
+	static Function<BoardStates, Engine> named(String name) {
+		switch (name) {
+			case "mcts":
+				return MonteCarloPlay::new;
+			case "alphabeta":
+				return side -> new AlphaBetaPlay();
+			default:
+				throw new IllegalArgumentException("Unknown engine: " + name);
+		}
+	}
+}
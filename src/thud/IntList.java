@@ -0,0 +1,121 @@
+package thud;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of primitive ints, used as a reusable buffer for packed moves (see Move) and for move logs.
+ * Avoids the boxing and per element garbage of List<Integer> in move generation and search.
+ */
+public final class IntList {
+	private int[] data;
+	private int size;
+
+	public IntList() {
+		this(16);
+	}
+
+	public IntList(int capacity) {
+		data = new int[Math.max(capacity, 1)];
+	}
+
+	public IntList(IntList other) {
+		data = Arrays.copyOf(other.data, Math.max(other.size, 1));
+		size = other.size;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int get(int index) {
+		if (index >= size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		return data[index];
+	}
+
+	public void set(int index, int value) {
+		if (index >= size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		data[index] = value;
+	}
+
+	public void add(int value) {
+		if (size == data.length)
+			data = Arrays.copyOf(data, size * 2);
+		data[size++] = value;
+	}
+
+	public void addAll(IntList other) {
+		for (int i=0; i<other.size; i++)
+			add(other.data[i]);
+	}
+
+	public int removeAt(int index) {
+		int value = get(index);
+		System.arraycopy(data, index + 1, data, index, size - index - 1);
+		size--;
+		return value;
+	}
+
+	public int removeLast() {
+		if (size == 0)
+			throw new IndexOutOfBoundsException("List is empty");
+		return data[--size];
+	}
+
+	public int last() {
+		return get(size - 1);
+	}
+
+	public int indexOf(int value) {
+		for (int i=0; i<size; i++) {
+			if (data[i] == value)
+				return i;
+		}
+		return -1;
+	}
+
+	public boolean contains(int value) {
+		return indexOf(value) >= 0;
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	// ascending order, in place
+	public void sort() {
+		Arrays.sort(data, 0, size);
+	}
+
+	public int[] toArray() {
+		return Arrays.copyOf(data, size);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (o == null || getClass() != o.getClass()) return false;
+
+		IntList that = (IntList) o;
+
+		if (size != that.size) return false;
+		for (int i=0; i<size; i++) {
+			if (data[i] != that.data[i])
+				return false;
+		}
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		int result = 1;
+		for (int i=0; i<size; i++)
+			result = 31 * result + data[i];
+		return result;
+	}
+}
@@ -1,6 +1,8 @@
 package thud;
 
 import java.io.*;
+import java.nio.file.Paths;
+import java.util.function.Function;
 
 public class Main {
 
@@ -23,18 +25,36 @@ public class Main {
 		// rounds are 1 indexed for clarity
 		int startRound = 1;
 		boolean player2ai = false;  // set to true if second player is played by ai
-		MonteCarloPlay ai = null;
+		Function<BoardStates, Engine> engines = null;
+		OpeningBook book = null;
+		AsyncEngine ai = null;
 
-        	if (args.length > 1) {
+        	if (args.length > 3) {
         		printUsageAndExit(1);
 		}
-		else if (args.length == 1) {
+		else if (args.length >= 1) {
 			if (args[0].charAt(0) == '-') {
 				if (args[0].equals("-a")) {
 					player2ai = true;
+					try {
+						engines = Engine.named((args.length >= 2) ? args[1] : "mcts");
+					} catch (IllegalArgumentException ex) {
+						System.err.println(ex.getMessage());
+						printUsageAndExit(2);
+					}
+					if (args.length == 3) {
+						try {
+							book = OpeningBook.open(Paths.get(args[2]));
+						} catch (IOException ex) {
+							System.out.printf("Couldn't load opening book %s: %s", args[2], ex.getMessage());
+							System.exit(3);
+						}
+					}
 				} else {
 					printUsageAndExit(2);
 				}
+			} else if (args.length > 1) {
+				printUsageAndExit(1);
 			} else {
 				System.out.println("Loading save file, if the game is complete it will be re-scored, if it is incomplete it will resume");
 				try {
@@ -61,6 +81,8 @@ public class Main {
 		}
 
 		for (int round=startRound; round <= 2; round++) {
+			boolean playing = true;
+
 			// don't initialize a new round if we loaded from a file in middle of a round
 			// if we didn't load from a file resumeRound() defaults to false
 			if (!recordsManager.resumeRound()) {
@@ -76,12 +98,17 @@ public class Main {
 				// However with ai, we do have to alternate starting round player side, by giving the ai a first move
 				// before the main loop starts when it gets first move, then it plays after human in the main loop
 				if (player2ai) {
-					ai = new MonteCarloPlay((round==1) ? BoardStates.TROLL : BoardStates.DWARF);
+					if (ai != null)
+						ai.shutdown();
+					Engine engine = engines.apply((round==1) ? BoardStates.TROLL : BoardStates.DWARF);
+					if (book != null)
+						engine = new BookPlay(book, engine);
+					ai = new AsyncEngine(engine, AsyncEngine.DEFAULT_PONDER_NODES);
 
 					// if second round, then do an initial turn for the ai
 					if (round == 2) {
-						player.play(turn, ai.selectPlay()); // first move never has remove, so don't worry handling it
-						System.out.println("\nAI plays: " + player.getLastMove());
+						playing = playAiMove(ai); // first move never has remove, so don't worry handling it
+						System.out.println();
 					}
 				}
 			}
@@ -92,7 +119,6 @@ public class Main {
 				recordsManager.setResumeRound(false);
 			}
 
-			boolean playing = true;
 			while (playing) { // while playing the current round
 
 				System.out.print(player.getBoard());
@@ -122,18 +148,16 @@ public class Main {
 				}
 
 				if (playing && specialAction==SpecialActions.NORMAL && player2ai) {
-					ai.opponentPlay(player.getLastMove());
+					// wait for the ai to take the move in, if it can't it is out of step with the game
+					ai.opponentPlay(player.getLastMoveCode()).join();
 
 					// skip ai play if human has remove turn next
 					if (!turn.isRemoveTurn()) {
-						player.play(turn, ai.selectPlay());
-						System.out.print("\nAI plays: " + player.getLastMove());
+						playing = playAiMove(ai);
 
 						// if ai move has remove turn then handle it now, so that it is player turn on next iteration
-						if (turn.isRemoveTurn()) {
-							player.play(turn, ai.selectPlay());
-							System.out.print("\nAI plays: " + player.getLastMove());
-						}
+						if (playing && turn.isRemoveTurn())
+							playing = playAiMove(ai);
 						System.out.println();
 					}
 				}
@@ -162,8 +186,22 @@ public class Main {
 			savePrompt();
 	}
 
+	// plays the ai's move, returns false if it has none, which ends the round
+	private static boolean playAiMove(AsyncEngine ai) {
+		String move = ai.selectPlay().join();
+		if (move == null) {
+			System.out.print("\nAI has no move, round over");
+			return false;
+		}
+		player.play(turn, move);
+		System.out.print("\nAI plays: " + player.getLastMove());
+		return true;
+	}
+
 	private static void printUsageAndExit(int error) {
-		System.err.println("Proper Usage: thud -a | file.txt where -a enables ai opponent or restore human v human file");
+		System.err.println("Proper Usage: thud -a [mcts|alphabeta [book.bin]] | file.txt where -a enables ai opponent "
+				+ "(Monte Carlo tree search by default, or alpha-beta search, playing from an opening book "
+				+ "built by OpeningBookBuilder if given) or restore human v human file");
 		System.exit(error);
 	}
 
@@ -1,13 +1,24 @@
 package thud;
 
-import java.util.LinkedList;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
-/*
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
-*/
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 /**
  * Created by Thai Flowers on 6/16/2017.
@@ -16,244 +27,721 @@ import java.util.concurrent.locks.ReentrantLock;
  *     https://jeffbradberry.com/posts/2015/09/intro-to-monte-carlo-tree-search/
  *     https://en.wikipedia.org/wiki/Monte_Carlo_tree_search
  *
- * Note: There is, as of now, no way for the ai to send a special action command to the main class.
- *       So when the ai is out of moves (namely numDwarfs or numTrolls is zero) then it will produce null pointer exception
+ * The tree only stores moves.  Its nodes are int indices into the arrays of a NodeArena, about a hundred bytes
+ * each, so millions of them fit in a normal heap.  A search board (player/playState) sits at the root position,
+ * each playOut plays its way down the tree and through a simulation on it with Player.playTrusted and then undoes
+ * it all.  When the side to move has no moves selectPlay returns Move.NONE, and a node without moves is scored as
+ * the end of the game it is.
  *
- * Background playOut thread was blazing fast and no exceptions, but requires gigs of ram
- * Even with holding the root node and its children, and not the whole tree (root was moved on each opponentPlay call)
+ * Each expanded node keeps a MoveIndex, its next few untried moves and a move to child table.  With progressive
+ * widening (on by default) a node only gets more children as its visits grow, best Player.movePrior first, so the
+ * search goes deep on the likely moves of positions with a couple of hundred legal ones.  RAVE (see setRave) can
+ * blend in how each move did wherever it was played further down the line.  Results are also kept per position
+ * in a TranspositionTable, so nodes reached by different move orders score from their combined statistics.
  *
- * I could modify this to add nodes when a move has yet to be simulated via playOut
- * but as it stands, the delay caused by completing playOuts for each leaf of the root branch
- * isn't too long and makes it feel like the ai is thinking (though it is dumber than the threaded version)
+ * The arena has a node budget.  A full tree is pruned of its least visited subtrees, and the subtrees a move
+ * makes unreachable are freed in advance, their nodes going back to the arena for reuse.
  *
+ * Search runs on a thread pool, one Worker (search board, PlayoutEngine and Random) per thread, in one of two modes:
+ *     root parallel: one independent SearchTree per worker.  selectPlay merges the statistics of the root
+ *                    children across trees, by move, and opponentPlay advances every tree.
+ *     shared tree:   every worker searches the same SearchTree.  Node statistics are updated atomically, children
+ *                    are only added under the node's arena lock, and each playOut adds a virtual loss to the nodes it
+ *                    passes until its result is in, pushing concurrent selections onto other branches.
+ * The transposition table is shared in both modes, its updates are atomic.
+ *
+ * selectPlay() searches until every root move has been tried once (or for as many playOuts as there are root
+ * moves, with progressive widening), so its thinking time depends on the branching factor.  selectPlay(Duration)
+ * and selectPlay(int playouts) search for a set time or number of playouts instead and play the most visited move,
+ * the more robust choice once moves have more than a visit or two each.
+ *
+ * In leaf parallel mode (see setLeafParallelism) each new node is simulated several times at once on a ForkJoinPool,
+ * by Simulators that keep their own copy of the search board, and the summed result is backed up in one go.
+ * Selection, expansion and backprop stay on the search thread, only the simulations run on the pool.
+ *
+ * Besides the blocking opponentPlay/selectPlay, searches can be stopped early and the tree can be searched ahead
+ * (pondered) up to a node limit while the opponent thinks, see AsyncEngine.
  */
-public class MonteCarloPlay {
+public class MonteCarloPlay implements Engine {
 	static final int MAX_SIM_MOVES = 12;
-	//final Lock lock = new ReentrantLock();
-	//final Condition runningPlayout = lock.newCondition();
-
-	class MonteCarloNode {
-		int wins;
-		int visits;
-
-		Player player;
-		PlayState playState;
-		MonteCarloNode parent;
-		List<MonteCarloNode> children;
-		List<String> possibleMoves;
-
-		MonteCarloNode(String move, MonteCarloNode parent) {
-			this.parent = parent;
-			if (parent==null) {
-				this.player = new Player(new Board());
-				this.player.initializeGame();
-				this.playState = new PlayState();
-				this.possibleMoves = player.getPossibleMoves(this.playState);
+
+	// share of the heap the search trees may use by default
+	static final int DEFAULT_HEAP_DIVISOR = 4;
+	// a full tree is pruned down to this share of its node budget
+	static final double PRUNE_TARGET = 0.75;
+
+	// with progressive widening a node with v visits may have WIDENING_BASE + WIDENING_SCALE*sqrt(v) children
+	static final int WIDENING_BASE = 4;
+	static final double WIDENING_SCALE = 2;
+
+	// visits at which a node's own results and its RAVE results count equally
+	static final double RAVE_EQUIVALENCE = 1000;
+
+	// a virtual loss is one visit with a -1 result, packed like the node statistics
+	private static final long VIRTUAL_LOSS = (1L << 32) - 1;
+
+	static double score(BoardStates turn, int wins, int visits, int numPlayouts) {
+		return score(turn, ((double)wins) / ((double)visits), visits, numPlayouts);
+	}
+
+	// value is the estimated mean result, usually wins/visits
+	static double score(BoardStates turn, double value, int visits, int numPlayouts) {
+		int c;
+		if (turn == BoardStates.DWARF)
+			c = 1;
+		else
+			c = 2000;
+
+		return value + c*Math.sqrt(Math.log((double)numPlayouts)/(double)visits);
+	}
+
+	/**
+	 * The per-thread part of a search: a search board, always at its tree's root position between playOuts,
+	 * and the playout engine and Random that go with it.
+	 */
+	static class Worker {
+		final Random rand = new Random();
+		final Player player = new Player(new Board());
+		final PlayState playState = player.initializeGame();
+		final PlayoutEngine playoutEngine = new PlayoutEngine(player, playState);
+		final IntList moves = new IntList();
+		// moves of the current playOut, tree part and simulation, in PlayoutEngine's line format
+		final IntList line = new IntList();
+		// extra simulations run alongside this worker's own in leaf parallel mode, none by default
+		Simulator[] batch = new Simulator[0];
+
+		// returns the search board to the root position
+		void undoPlays(int count) {
+			for (int i = 0; i < count; i++)
+				player.undo(playState);
+		}
+	}
+
+	/**
+	 * One simulation of a leaf parallel batch, on its own copy of a worker's search board.  Like the worker's board
+	 * it stays at the tree's root between playOuts: compute plays the tree part of the worker's line down to the new
+	 * node, runs the playout engine on from there and undoes the tree part again.
+	 * The task is reinitialized and handed to the pool again for every playOut, so a batch allocates nothing.
+	 */
+	static final class Simulator extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final Random rand = new Random();
+		final Player player;
+		final PlayState playState;
+		final PlayoutEngine playoutEngine;
+		// the tree part of the playOut followed by this simulation's moves, in PlayoutEngine's line format
+		final IntList line = new IntList();
+		private final BoardStates side;
+		private int depth;
+		private int result;
+
+		Simulator(Worker worker, BoardStates side, PlayoutPolicy policy) {
+			this.player = new Player(worker.player);
+			this.playState = new PlayState(worker.playState);
+			this.playoutEngine = new PlayoutEngine(player, playState);
+			this.playoutEngine.setPolicy(policy);
+			this.side = side;
+		}
+
+		// takes the first depth moves of the worker's line as the path to simulate from
+		void prepare(IntList path, int depth) {
+			line.clear();
+			for (int i = 0; i < depth; i++)
+				line.add(path.get(i));
+			this.depth = depth;
+		}
+
+		@Override
+		protected void compute() {
+			for (int i = 0; i < depth; i++)
+				player.playTrusted(playState, line.get(i) & ~PlayoutEngine.TROLL_MOVE);
+			playoutEngine.run(rand, MAX_SIM_MOVES, line);
+			for (int i = 0; i < depth; i++)
+				player.undo(playState);
+			result = playoutEngine.result(side);
+		}
+
+		// +1 or -1 for side, once the task is done
+		int result() {
+			return result;
+		}
+	}
+
+	/**
+	 * A search tree and the workers that search it, one in root parallel mode or all of them in shared tree mode.
+	 * The root only changes in advance and nodes are only freed in advance and prune, while no playOuts are running.
+	 */
+	class SearchTree {
+		final Worker[] workers;
+		final AtomicInteger numPlayouts = new AtomicInteger();
+		final NodeArena arena;
+		final int maxNodes;
+		int root;
+
+		SearchTree(int maxNodes, Worker... workers) {
+			this.workers = workers;
+			this.maxNodes = maxNodes;
+			arena = new NodeArena(maxNodes);
+			root = newNode(Move.NONE, NodeArena.NONE, workers[0]);
+		}
+
+		// must be called while the worker's search board is at the new node's position (move already played)
+		private int newNode(int move, int parent, Worker worker) {
+			return arena.allocate(move, parent, worker.player.getPositionKey(worker.playState),
+					worker.playState.getTurn(), worker.player.countPossibleMoves(worker.playState));
+		}
+
+		// The minimum search of selectPlay(): every root move tried once, or with progressive widening as many
+		// playOuts as there are root moves, spent on the moves the widening lets in.
+		boolean rootSearched() {
+			if (widening) {
+				// a leaf parallel batch gives a new node several visits, so a leaf root can already have enough
+				return TranspositionTable.visits(arena.stats(root)) >= arena.moveCount(root) && rootHasChild();
 			}
-			else {
-				this.player = new Player(parent.player);
-				this.playState = new PlayState(parent.playState);
-				this.player.play(playState, move);
-				this.possibleMoves = player.getPossibleMoves(this.playState);
+			return arena.childCount(root) == arena.moveCount(root);
+		}
+
+		// false only while no root move has been tried yet (and there is one to try)
+		boolean rootHasChild() {
+			return arena.childCount(root) > 0 || arena.moveCount(root) == 0;
+		}
+
+		// true once node has all the children it may have for now, and at least one
+		boolean isExpanded(int node) {
+			int childCount = arena.childCount(node);
+			return childCount != 0 && childCount >= childLimit(node);
+		}
+
+		int childLimit(int node) {
+			int moveCount = arena.moveCount(node);
+			if (!widening)
+				return moveCount;
+
+			int visits = TranspositionTable.visits(arena.stats(node));
+			return (int) Math.min(moveCount, WIDENING_BASE + WIDENING_SCALE * Math.sqrt(visits));
+		}
+
+		double score(int node, int numPlayouts) {
+			// prefer the shared statistics of this position when transpositions have added to them
+			long stats = arena.stats(node);
+			int wins = TranspositionTable.wins(stats), visits = TranspositionTable.visits(stats);
+			long shared = table.get(arena.key(node));
+			if (TranspositionTable.visits(shared) > visits) {
+				wins = TranspositionTable.wins(shared);
+				visits = TranspositionTable.visits(shared);
 			}
 
-			wins = visits = 0;
-			children = null;
+			double value = ((double) wins) / visits;
+			if (rave) {
+				// blend in the all-moves-as-first results, trusting them less as the node's own results build up
+				long amaf = arena.amaf(node);
+				int amafVisits = TranspositionTable.visits(amaf);
+				if (amafVisits > 0) {
+					double beta = Math.sqrt(RAVE_EQUIVALENCE / (3 * visits + RAVE_EQUIVALENCE));
+					value = (1 - beta) * value + beta * TranspositionTable.wins(amaf) / amafVisits;
+				}
+			}
+
+			return MonteCarloPlay.score(arena.turn(node), value, visits, numPlayouts);
 		}
 
-		double score() {
-			int c;
-			if (this.playState.isTurn(BoardStates.DWARF))
-				c = 1;
-			else
-				c = 2000;
+		// Adds a child for an untried move, leaving the search board at the child's position, and returns it with a
+		// virtual loss already added.  Returns NONE when every move has been tried (possibly by another thread since
+		// this one selected the node) or the arena is full.
+		// Untried moves are queued in the node's MoveIndex a batch at a time, with progressive widening best
+		// Player.movePrior first, otherwise at random, and each expansion takes the next one in line.
+		private int expand(int node, Worker worker) {
+			synchronized (arena.lockFor(node)) {
+				if (arena.childCount(node) >= arena.moveCount(node))
+					return NodeArena.NONE;
 
-			return (((double)wins) / ((double)visits)) + c*Math.sqrt(Math.log((double)numPlayouts)/(double)visits);
+				MoveIndex index = arena.moveIndex(node);
+				if (index == null) {
+					index = new MoveIndex();
+					arena.setMoveIndex(node, index);
+				}
+				if (index.isQueueEmpty()) {
+					index.refill(worker.player, worker.playState, worker.moves, worker.rand, widening);
+					if (index.isQueueEmpty())
+						return NodeArena.NONE;
+				}
+				int move = index.nextUntried();
+				worker.player.playTrusted(worker.playState, move);
+				int child = newNode(move, node, worker);
+				if (child == NodeArena.NONE) {
+					worker.player.undo(worker.playState);
+					index.returnUntried();
+					return NodeArena.NONE;
+				}
+				arena.addStats(child, VIRTUAL_LOSS);
+				arena.addChild(node, child);
+				return child;
+			}
 		}
-	}
 
-	//boolean destroy = false;
-	Random rand = new Random();
-	int numPlayouts = 0;
-	MonteCarloNode root = new MonteCarloNode("", null);
-	BoardStates side;
+		// Moves the root (and every search board) down to the child for move, keeping its subtree when there is one.
+		// The rest of the old tree goes back to the arena's free list.
+		void advance(int move) {
+			for (Worker worker : workers) {
+				worker.player.play(worker.playState, move);
+				for (Simulator simulator : worker.batch)
+					simulator.player.play(simulator.playState, move);
+			}
 
-	public MonteCarloPlay(BoardStates side){
-		this.side = side;
-		/*
-		Runnable playoutLoop = () -> {
-			for (long i=0; i<(long)Math.pow(10, 5); i++) {
-				playOut();
-				lock.lock();
-				if (destroy) {
-					lock.unlock();
-					break;
+			int child = arena.findChild(root, move);
+			arena.freeExcept(root, child);
+			if (child != NodeArena.NONE) {
+				root = child;
+				arena.setParent(root, NodeArena.NONE);
+			} else {
+				root = newNode(move, NodeArena.NONE, workers[0]);
+			}
+		}
+
+		// frees the least visited subtrees of a full tree, returns false if there was nothing left to free
+		boolean prune() {
+			return arena.prune(root, (int) (maxNodes * PRUNE_TARGET)) > 0;
+		}
+
+		void playOut(Worker worker) {
+			int numPlayouts = this.numPlayouts.addAndGet(1 + worker.batch.length);
+			int current = root;
+			int depth = 0;
+			worker.line.clear();
+
+			// Selection
+			while (isExpanded(current)) {
+				int bestChoice = NodeArena.NONE;
+				double bestScore = 0;
+				for (int child = arena.firstChild(current); child != NodeArena.NONE; child = arena.sibling(child)) {
+					double score = score(child, numPlayouts);
+					if (bestChoice == NodeArena.NONE || score > bestScore) {
+						bestChoice = child;
+						bestScore = score;
+					}
 				}
-				lock.unlock();
+				addToLine(worker.line, bestChoice, current);
+				current = bestChoice;
+				arena.addStats(current, VIRTUAL_LOSS);
+				worker.player.playTrusted(worker.playState, arena.move(current));
+				depth++;
 			}
-		};
-		new Thread(playoutLoop).start();
-		*/
-	}
 
-	/*
-	public void destroy() {
-		lock.lock();
-		destroy = true;
-		root = null;
-		lock.unlock();
-	}
-	*/
-
-	public void opponentPlay(String move) {
-		//lock.lock();
-		//try {
-		while (root.children == null || root.children.size() < root.possibleMoves.size())
-			playOut();
-			//runningPlayout.awaitUninterruptibly();
-		MonteCarloNode oldRoot = root;
-		if (root.children.size() == 1) {
-			root = root.children.get(0);
-			root.parent = null;
+			// Expansion
+			int newNode = expand(current, worker);
+			if (newNode != NodeArena.NONE) {
+				addToLine(worker.line, newNode, current);
+				depth++;
+			} else if (arena.moveCount(current) == 0 && current != root) {
+				// the game is over at current, the simulation below just scores it
+				newNode = current;
+			} else {
+				worker.undoPlays(depth);
+				for (; current != root; current = arena.parent(current))
+					arena.addStats(current, -VIRTUAL_LOSS);
+				return;
+			}
+
+			// simulation, on the same board as the selection above, which the engine leaves as it found it,
+			// and in leaf parallel mode the rest of the batch on the simulators' boards at the same time
+			for (Simulator simulator : worker.batch) {
+				simulator.prepare(worker.line, depth);
+				simulator.reinitialize();
+				leafPool.execute(simulator);
+			}
+			worker.playoutEngine.run(worker.rand, MAX_SIM_MOVES, worker.line);
+			worker.undoPlays(depth);
+			int winsInc = worker.playoutEngine.result(side);
+			for (Simulator simulator : worker.batch) {
+				simulator.join();
+				winsInc += simulator.result();
+			}
+			int visits = 1 + worker.batch.length;
+
+			// backprop, the whole batch at once, taking back the virtual losses added on the way down
+			long update = ((long) visits << 32) + winsInc - VIRTUAL_LOSS;
+
+			current = newNode;
+			while (current != root) {
+				arena.addStats(current, update);
+				table.add(arena.key(current), visits, winsInc);
+				current = arena.parent(current);
+			}
+			// the root never gets a virtual loss, but its visits drive the widening of its children
+			arena.addStats(root, ((long) visits << 32) + winsInc);
+
+			if (rave) {
+				updateAmafPath(newNode, worker.line, depth, worker.playoutEngine.result(side));
+				for (Simulator simulator : worker.batch)
+					updateAmafPath(newNode, simulator.line, depth, simulator.result());
+			}
 		}
-		else {
-			for (MonteCarloNode child : root.children) {
-				Player player = child.player;
-				if (player.getLastMove().equals(move)) {
-					root = child;
-					root.parent = null;
+
+		// updateAmaf for every node from node up to the root, for one simulation's line
+		private void updateAmafPath(int node, IntList line, int depth, int winsInc) {
+			for (int lineStart = depth; ; lineStart--) {
+				updateAmaf(node, line, lineStart, winsInc);
+				if (node == root)
 					break;
-				}
+				node = arena.parent(node);
 			}
 		}
 
-		if (root==oldRoot) {
-			root = new MonteCarloNode(move, oldRoot);
-			root.parent = null;
+		private void addToLine(IntList line, int node, int parent) {
+			int move = arena.move(node);
+			line.add((arena.turn(parent) == BoardStates.TROLL) ? move | PlayoutEngine.TROLL_MOVE : move);
+		}
 
-			while (root.children == null || root.children.size() < root.possibleMoves.size())
-				playOut();
+		// All moves as first: credits the result to every child of node whose move the side to move at node
+		// played anywhere from line[lineStart] on, as if it had been played first.
+		private void updateAmaf(int node, IntList line, int lineStart, int winsInc) {
+			int sideFlag = (arena.turn(node) == BoardStates.TROLL) ? PlayoutEngine.TROLL_MOVE : 0;
+			for (int child = arena.firstChild(node); child != NodeArena.NONE; child = arena.sibling(child)) {
+				int played = arena.move(child) | sideFlag;
+				for (int i = lineStart; i < line.size(); i++) {
+					if (line.get(i) == played) {
+						arena.addAmaf(child, (1L << 32) + winsInc);
+						break;
+					}
+				}
+			}
 		}
-		/*
-		} finally {
-			lock.unlock();
+	}
+
+	TranspositionTable table = new TranspositionTable();
+	BoardStates side;
+	volatile boolean widening = true;
+	volatile boolean rave = false;
+	final SearchTree[] trees;
+	private final ExecutorService pool;
+	private Supplier<PlayoutPolicy> policies = UniformPlayoutPolicy::new;
+	private final int searchThreads;
+	// runs the simulators of leaf parallel mode, created by setLeafParallelism when it turns it on
+	private ForkJoinPool leafPool;
+
+	public MonteCarloPlay(BoardStates side) {
+		this(side, Runtime.getRuntime().availableProcessors());
+	}
+
+	public MonteCarloPlay(BoardStates side, int threads) {
+		this(side, threads, false);
+	}
+
+	public MonteCarloPlay(BoardStates side, int threads, boolean sharedTree) {
+		this(side, threads, sharedTree, defaultNodeBudget());
+	}
+
+	// sharedTree selects shared tree mode, otherwise each thread searches its own tree.
+	// maxNodes bounds the nodes of all trees together, a full tree is pruned of its least visited subtrees.
+	public MonteCarloPlay(BoardStates side, int threads, boolean sharedTree, int maxNodes) {
+		if (threads < 1)
+			throw new IllegalArgumentException("Need at least one search thread");
+		if (maxNodes < threads)
+			throw new IllegalArgumentException("Node budget is too small");
+
+		this.side = side;
+		this.searchThreads = threads;
+		Worker[] workers = new Worker[threads];
+		for (int i = 0; i < threads; i++)
+			workers[i] = new Worker();
+
+		if (sharedTree) {
+			trees = new SearchTree[] { new SearchTree(maxNodes, workers) };
+		} else {
+			trees = new SearchTree[threads];
+			for (int i = 0; i < threads; i++)
+				trees[i] = new SearchTree(maxNodes / threads, workers[i]);
 		}
-		*/
+
+		// daemon threads, so an ai that is never shut down doesn't keep the game running
+		pool = Executors.newFixedThreadPool(threads, r -> {
+			Thread thread = new Thread(r, "thud-search");
+			thread.setDaemon(true);
+			return thread;
+		});
 	}
 
-	public String selectPlay() {
-		/*
-		String move;
-		lock.lock();
-		try {
-		*/
-		while (root.children == null || root.children.size() < root.possibleMoves.size()) {
-			//runningPlayout.awaitUninterruptibly();
-			playOut();
+	// Progressive widening (on by default) lets a node have more children the more it is visited, adding them best
+	// Player.movePrior first, so the search goes deep on likely moves instead of giving all of a dwarf turn's
+	// hundreds of moves a playOut first.  Set between searches.
+	public void setProgressiveWidening(boolean widening) {
+		this.widening = widening;
+	}
+
+	// RAVE also scores each move by the results of every playOut it was played in further down the line, the
+	// all-moves-as-first statistics, which fill in long before a node's own.  Off by default, because here it doesn't
+	// pay: it played even with plain search (Arena mcts-rave mcts, and at fixed playouts and move times), with
+	// RAVE_EQUIVALENCE from 30 to 10000, while scanning the line at every node of each backup costs about 7% of the
+	// playouts.  Set between searches.
+	public void setRave(boolean rave) {
+		this.rave = rave;
+	}
+
+	// Sets how simulations choose their moves, one policy from the supplier per search thread (see PlayoutPolicy).
+	// Uniformly random by default.  Set between searches.
+	public void setPlayoutPolicy(Supplier<PlayoutPolicy> policies) {
+		this.policies = policies;
+		for (SearchTree tree : trees) {
+			for (Worker worker : tree.workers) {
+				worker.playoutEngine.setPolicy(policies.get());
+				for (Simulator simulator : worker.batch)
+					simulator.playoutEngine.setPolicy(policies.get());
+			}
 		}
+	}
+
+	// Leaf parallel mode: each new node is simulated batchSize times at once, the extra simulations on a ForkJoinPool,
+	// and the results are backed up together as batchSize visits.  1 (the default) turns it off.  More simulations per
+	// node give it a steadier first estimate for the cost of fewer nodes per playOut, worth it when there are
+	// more cores than search threads: the pool gets the cores the search threads leave idle (at least one).
+	// Set between searches.
+	public void setLeafParallelism(int batchSize) {
+		setLeafParallelism(batchSize, Math.max(1, Runtime.getRuntime().availableProcessors() - searchThreads));
+	}
+
+	// as above, with the extra simulations on leafThreads pool threads
+	public void setLeafParallelism(int batchSize, int leafThreads) {
+		if (batchSize < 1)
+			throw new IllegalArgumentException("Batch size must be positive");
+		if (leafThreads < 1)
+			throw new IllegalArgumentException("Need at least one leaf thread");
 
-		MonteCarloNode bestChoice = null;
-		for (MonteCarloNode child : root.children) {
-			if (bestChoice == null)
-				bestChoice = child;
-			else if (child.score() > bestChoice.score())
-				bestChoice = child;
+		if (leafPool != null && (batchSize == 1 || leafPool.getParallelism() != leafThreads)) {
+			leafPool.shutdown();
+			leafPool = null;
 		}
+		if (batchSize > 1 && leafPool == null)
+			leafPool = new ForkJoinPool(leafThreads);
+		for (SearchTree tree : trees) {
+			for (Worker worker : tree.workers) {
+				Simulator[] batch = new Simulator[batchSize - 1];
+				for (int i = 0; i < batch.length; i++)
+					batch[i] = new Simulator(worker, side, policies.get());
+				worker.batch = batch;
+			}
+		}
+	}
+
+	// the node budget for a share of the maximum heap (-Xmx)
+	static int defaultNodeBudget() {
+		long nodes = Runtime.getRuntime().maxMemory() / DEFAULT_HEAP_DIVISOR / NodeArena.BYTES_PER_NODE;
+		return (int) Math.min(nodes, Integer.MAX_VALUE);
+	}
+
+	// stops the search threads, the ai can't be used afterwards
+	@Override
+	public void shutdown() {
+		pool.shutdownNow();
+		if (leafPool != null)
+			leafPool.shutdownNow();
+	}
 
-		root = bestChoice;
-		root.parent = null;
-		return root.player.getLastMove();
-		/*
-		} finally {
-			lock.unlock();
+	@Override
+	public void opponentPlay(int move) {
+		search(tree -> !tree.rootSearched(), () -> false);
+		advance(move);
+		search(tree -> !tree.rootSearched(), () -> false);
+	}
+
+	@Override
+	public int selectPlay() {
+		int move = bestPlay(() -> false);
+		if (move != Move.NONE)
+			advance(move);
+		return move;
+	}
+
+	// Searches for budget, or longer if the minimum search of selectPlay() isn't done, and plays the most visited move.
+	public int selectPlay(Duration budget) {
+		return selectPlay(budget, false);
+	}
+
+	// With hardDeadline the search stops when the budget runs out even if the minimum search isn't done,
+	// it only waits for the first root move so there is one to play.
+	public int selectPlay(Duration budget, boolean hardDeadline) {
+		long deadline = System.nanoTime() + budget.toNanos();
+		search(tree -> System.nanoTime() - deadline < 0 || (hardDeadline ? !tree.rootHasChild() : !tree.rootSearched()),
+				() -> false);
+		return playMostVisited();
+	}
+
+	// Runs that many playOuts, shared between all threads, and plays the most visited move.
+	public int selectPlay(int playouts) {
+		if (playouts < 1)
+			throw new IllegalArgumentException("Need at least one playout");
+
+		AtomicInteger remaining = new AtomicInteger(playouts);
+		search(tree -> remaining.getAndDecrement() > 0 || !tree.rootHasChild(), () -> false);
+		return playMostVisited();
+	}
+
+	private int playMostVisited() {
+		RootStats stats = new RootStats();
+		if (stats.size == 0)
+			return Move.NONE;
+
+		int best = 0;
+		for (int i = 1; i < stats.size; i++) {
+			if (stats.visits[i] > stats.visits[best]
+					|| (stats.visits[i] == stats.visits[best] && stats.wins[i] > stats.wins[best]))
+				best = i;
 		}
 
+		int move = stats.moves[best];
+		advance(move);
 		return move;
-		*/
 	}
 
-	void playOut() {
-		/*
-		lock.lock();
-		try {
-			if (destroy) {
-				return;
-			}
-		*/
-
-		numPlayouts++;
-		MonteCarloNode current = root;
-
-		// Selection
-		while (current.children != null && current.children.size() == current.possibleMoves.size()) {
-			MonteCarloNode bestChoice = current.children.get(0);
-			for (int i = 1; i < current.children.size(); i++) {
-				MonteCarloNode curChild = current.children.get(i);
-				if (curChild.score() > bestChoice.score())
-					bestChoice = curChild;
+	// Searches like selectPlay() and returns the best move, without playing it.
+	// Gives up and returns Move.NONE if stop returns true first.
+	@Override
+	public int bestPlay(BooleanSupplier stop) {
+		search(tree -> !tree.rootSearched(), stop);
+		if (stop.getAsBoolean())
+			return Move.NONE;
+
+		RootStats stats = new RootStats();
+		if (stats.size == 0)
+			return Move.NONE;
+
+		int best = 0;
+		double bestScore = score(stats.turns[0], stats.wins[0], stats.visits[0], stats.numPlayouts);
+		for (int i = 1; i < stats.size; i++) {
+			double score = score(stats.turns[i], stats.wins[i], stats.visits[i], stats.numPlayouts);
+			if (score > bestScore) {
+				best = i;
+				bestScore = score;
 			}
-			current = bestChoice;
 		}
 
-		// Expansion
-		if (current.children == null)
-			current.children = new LinkedList<>();
+		return stats.moves[best];
+	}
+
+	/**
+	 * Statistics of the root children summed over all trees, per root move.  The trees don't share their root
+	 * children: with progressive widening each tree expands its own subset of the root moves (ties in
+	 * Player.movePrior are broken at random per tree), so every move any tree has tried is counted.
+	 * Only taken while no search is running.
+	 */
+	class RootStats {
+		final int size;
+		final int[] moves;
+		final BoardStates[] turns;
+		final int[] wins;
+		final int[] visits;
+		int numPlayouts = 0;
+
+		RootStats() {
+			int capacity = 0;
+			for (SearchTree tree : trees)
+				capacity += tree.arena.childCount(tree.root);
+			moves = new int[capacity];
+			turns = new BoardStates[capacity];
+			wins = new int[capacity];
+			visits = new int[capacity];
 
-		// get all possible moves and remove already explored nodes
-		List<String> moves = current.player.getPossibleMoves(current.playState);
-		for (MonteCarloNode child : current.children) {
-			for (int i = 0; i < moves.size(); i++)
-				if (moves.get(i).equals(child.player.getLastMove()))
-					moves.remove(i);
+			// move -> index into the arrays above
+			Map<Integer, Integer> slots = new HashMap<>();
+			for (SearchTree tree : trees) {
+				numPlayouts += tree.numPlayouts.get();
+				NodeArena arena = tree.arena;
+				for (int child = arena.firstChild(tree.root); child != NodeArena.NONE; child = arena.sibling(child)) {
+					int move = arena.move(child);
+					Integer slot = slots.get(move);
+					if (slot == null) {
+						slot = slots.size();
+						slots.put(move, slot);
+						moves[slot] = move;
+						turns[slot] = arena.turn(child);
+					}
+					long stats = arena.stats(child);
+					wins[slot] += TranspositionTable.wins(stats);
+					visits[slot] += TranspositionTable.visits(stats);
+				}
+			}
+			size = slots.size();
 		}
+	}
+
+	// plays move in every tree, keeping the subtrees already searched below it
+	@Override
+	public void advance(int move) {
+		for (SearchTree tree : trees)
+			tree.advance(move);
+	}
+
+	// searches ahead from the current root until stop returns true or the trees hold maxNodes nodes between them
+	@Override
+	public void ponder(int maxNodes, BooleanSupplier stop) {
+		int treeNodes = Math.max(maxNodes / trees.length, 1);
+		search(tree -> tree.arena.size() < treeNodes, stop);
+	}
 
-		// choose a move at random from unexplored
-		if (moves.size() == 0) {
-			return;
+	// Plays out while more holds for the tree and stop is false, all workers at once on their own pool threads.
+	// Interrupting the calling thread stops the workers at the end of their current playOut, and search waits for all
+	// of them to return before it throws, so the trees and search boards are never left to a running worker.
+	// A tree that fills up stops its workers, is pruned and then searched again.
+	private void search(Predicate<SearchTree> more, BooleanSupplier stop) {
+		// set when the search has to end early, the workers finish their current playOut and return
+		AtomicBoolean halted = new AtomicBoolean();
+		List<Callable<Void>> tasks = new ArrayList<>();
+		for (SearchTree tree : trees) {
+			for (Worker worker : tree.workers) {
+				tasks.add(() -> {
+					while (!halted.get() && !stop.getAsBoolean() && !Thread.currentThread().isInterrupted()
+							&& !tree.arena.isFull() && more.test(tree))
+						tree.playOut(worker);
+					return null;
+				});
+			}
 		}
-		String move = moves.get(rand.nextInt(moves.size()));
-		MonteCarloNode newNode = new MonteCarloNode(move, current);
-		current.children.add(newNode);
 
-		// simulation
-		Player simulation = new Player(newNode.player);
-		PlayState simState = new PlayState(newNode.playState);
-		for (int i = 0; i < MAX_SIM_MOVES; i++) {
+		boolean pruned;
+		do {
+			List<Future<Void>> results = new ArrayList<>(tasks.size());
+			for (Callable<Void> task : tasks)
+				results.add(pool.submit(task));
+			try {
+				for (Future<Void> result : results)
+					result.get();
+			} catch (InterruptedException ex) {
+				// the workers still hold the search boards and the tree, they must be done before anyone else
+				// (advance, freeExcept, the next search) touches them
+				halted.set(true);
+				awaitAll(results);
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while searching", ex);
+			} catch (ExecutionException ex) {
+				halted.set(true);
+				awaitAll(results);
+				throw new IllegalStateException("Search failed", ex.getCause());
+			}
 
-			List<String> simMoves = simulation.getPossibleMoves(simState);
-			move = simMoves.get(rand.nextInt(simMoves.size()));
-			simulation.play(simState, move);
+			pruned = false;
+			for (SearchTree tree : trees) {
+				if (tree.arena.isFull())
+					pruned |= tree.prune();
+			}
+		} while (pruned && !stop.getAsBoolean());
+	}
 
-			if (simState.isTurn(BoardStates.DWARF)) {
-				if (simulation.getBoard().getNumDwarfs() < 2)
+	// waits for every task to end, whatever its outcome, without giving up when interrupted
+	private static void awaitAll(List<Future<Void>> results) {
+		boolean interrupted = false;
+		for (Future<Void> result : results) {
+			while (true) {
+				try {
+					result.get();
 					break;
-			} else {
-				if (simulation.getBoard().getNumTrolls() < 3)
+				} catch (InterruptedException ex) {
+					interrupted = true;
+				} catch (ExecutionException | CancellationException ex) {
 					break;
+				}
 			}
 		}
-
-		simulation.calculateScores(1);
-		int[] scores = simulation.getScores();
-
-		// backprop
-		int winsInc = 0;
-		if (side == BoardStates.DWARF)
-			winsInc = (scores[0] > scores[1]) ? 1 : -1;
-		else //if (side == BoardStates.TROLL)
-			winsInc = (scores[0] < scores[1]) ? 1 : -1;
-
-		current = newNode;
-		while (current != root) {
-			current.wins += winsInc;
-			current.visits += 1;
-			current = current.parent;
-		}
-		/*
-		} finally {
-			runningPlayout.signal();
-			lock.unlock();
-		}
-		*/
+		if (interrupted)
+			Thread.currentThread().interrupt();
 	}
 }
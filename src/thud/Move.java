@@ -0,0 +1,129 @@
+package thud;
+
+/**
+ * Packs a whole move into a single int, so generation, play and the ai never build or split strings.
+ *
+ * Layout (low to high bits):
+ *     0-7   from square (row*15 + col)
+ *     8-15  to square
+ *     16-23 capture mask, one bit per direction around the anchor troll (remove moves only)
+ *     24-25 command (MOVE, HURL, SHOVE or REMOVE)
+ *
+ * A remove move has both from and to set to the anchor, the troll that moved on the previous turn.
+ * Text in the "M A7 E7" / "R F7 G8" notation is only parsed and formatted here, for Main and RecordsManager.
+ */
+public final class Move {
+	public static final int MOVE = 0;
+	public static final int HURL = 1;
+	public static final int SHOVE = 2;
+	public static final int REMOVE = 3;
+
+	// marks "no move", for example the last move of an empty log
+	public static final int NONE = -1;
+
+	private static final char[] COMMAND_LETTERS = {'M', 'H', 'S', 'R'};
+
+	private Move() {
+	}
+
+	public static int encode(int command, int from, int to) {
+		return (command << 24) | (to << 8) | from;
+	}
+
+	public static int encodeRemove(int anchor, int captures) {
+		return (REMOVE << 24) | (captures << 16) | (anchor << 8) | anchor;
+	}
+
+	public static int command(int move) {
+		return (move >>> 24) & 0x3;
+	}
+
+	public static int from(int move) {
+		return move & 0xFF;
+	}
+
+	public static int to(int move) {
+		return (move >>> 8) & 0xFF;
+	}
+
+	public static int captures(int move) {
+		return (move >>> 16) & 0xFF;
+	}
+
+	public static char commandLetter(int move) {
+		return COMMAND_LETTERS[command(move)];
+	}
+
+	// previousMove is needed to resolve the anchor of a remove, pass NONE if there isn't one
+	public static int parse(String text, int previousMove) {
+		String[] order = text.trim().toUpperCase().split(" +");
+
+		if (order[0].length() != 1)
+			throw new IllegalArgumentException("Command must be a single letter");
+
+		int command = commandOf(order[0].charAt(0));
+		if (command == REMOVE) {
+			if (previousMove == NONE || command(previousMove) == HURL || command(previousMove) == REMOVE)
+				throw new IllegalArgumentException("Previous move doesn't allow captures!");
+
+			int anchor = to(previousMove);
+			int captures = 0;
+			for (int i=1; i<order.length; i++) {
+				int square = parseSquare(order[i]);
+				int dir = BitBoard.direction(anchor, square);
+				if (dir < 0 || BitBoard.step(anchor, dir) != square)
+					throw new IllegalArgumentException("Dwarf is not adjacent to the troll");
+				captures |= 1 << dir;
+			}
+			return encodeRemove(anchor, captures);
+		}
+
+		if (order.length != 3)
+			throw new IllegalArgumentException("Move must be of form Command StartPos [EndPos]");
+
+		return encode(command, parseSquare(order[1]), parseSquare(order[2]));
+	}
+
+	private static int commandOf(char letter) {
+		for (int command=0; command<COMMAND_LETTERS.length; command++) {
+			if (COMMAND_LETTERS[command] == letter)
+				return command;
+		}
+		throw new IllegalArgumentException("Command must be 'M'ove, 'H'url, 'S'hove or 'R'emove");
+	}
+
+	private static int parseSquare(String s) {
+		return new BoardPoint(s).getSquare();
+	}
+
+	public static String squareName(int square) {
+		StringBuilder sb = new StringBuilder(3);
+		sb.append((char) (BitBoard.col(square) + 'A'));
+		sb.append(BitBoard.row(square) + 1);
+		return sb.toString();
+	}
+
+	public static String toString(int move) {
+		if (move == NONE)
+			return " ";
+
+		StringBuilder sb = new StringBuilder(12);
+		sb.append(commandLetter(move));
+		if (command(move) == REMOVE) {
+			int captures = captures(move);
+			for (int dir=0; dir<8; dir++) {
+				if ((captures & (1 << dir)) != 0) {
+					sb.append(' ');
+					sb.append(squareName(BitBoard.step(from(move), dir)));
+				}
+			}
+		}
+		else {
+			sb.append(' ');
+			sb.append(squareName(from(move)));
+			sb.append(' ');
+			sb.append(squareName(to(move)));
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,143 @@
+package thud;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * The untried moves of an expanded MonteCarloPlay node, queued in the order they are to be tried, and a hash index
+ * from each tried move to the child it leads to (see NodeArena).
+ *
+ * Expansion takes the next move off the queue and finding the child for a move is a probe into a small open
+ * addressing table, both O(1), instead of regenerating the moves and matching them against the children each time.
+ * The queue holds the next BATCH moves only: most nodes get a handful of children at most (with progressive widening
+ * especially), and keeping every legal move of every expanded node would take several times the memory of the nodes
+ * themselves.  When the queue runs dry refill generates the moves again and queues the next batch of untried ones.
+ * The table only holds tried moves, so it grows with the node's children, not with its legal moves.
+ *
+ * Not thread safe, a node's index is only used under its arena lock.
+ */
+final class MoveIndex {
+	static final int BATCH = 8;
+	private static final int MIN_CAPACITY = 4;
+
+	private final int[] queue = new int[BATCH];
+	private int queueStart = 0;
+	private int queueEnd = 0;
+	// move/child pairs, Move.NONE for an empty slot
+	private int[] slots = emptySlots(MIN_CAPACITY);
+	private int children = 0;
+
+	boolean isQueueEmpty() {
+		return queueStart == queueEnd;
+	}
+
+	// The next batch of untried moves at the position of player/turn, which must be the node's.  With byPrior the
+	// best Player.movePrior come first, ties in random order, the order progressive widening wants them in,
+	// otherwise they are picked at random.  moves is scratch space.  Leaves the queue empty if every move is tried.
+	void refill(Player player, PlayState turn, IntList moves, Random rand, boolean byPrior) {
+		player.getPossibleMoves(turn, moves);
+		int untried = 0;
+		for (int i = 0; i < moves.size(); i++) {
+			int move = moves.get(i);
+			if (child(move) == NodeArena.NONE)
+				moves.set(untried++, move);
+		}
+
+		// a partial shuffle is enough to pick the batch at random
+		int batch = Math.min(BATCH, untried);
+		int shuffled = byPrior ? untried : batch;
+		for (int i = 0; i < shuffled; i++) {
+			int j = i + rand.nextInt(untried - i);
+			int swap = moves.get(i);
+			moves.set(i, moves.get(j));
+			moves.set(j, swap);
+		}
+
+		if (byPrior) {
+			// Insertion into the queue, kept best first, picks the batch without sorting every move.  A move only
+			// goes ahead of worse ones, which keeps the shuffled order within a prior.  The priors are appended to
+			// moves and the queue holds positions in moves until the batch is chosen.
+			int priors = moves.size();
+			for (int i = 0; i < untried; i++)
+				moves.add(player.movePrior(moves.get(i)));
+			int queued = 0;
+			for (int i = 0; i < untried; i++) {
+				int prior = moves.get(priors + i);
+				if (queued == batch && prior <= moves.get(priors + queue[batch - 1]))
+					continue;
+				int j = (queued < batch) ? queued++ : batch - 1;
+				for (; j > 0 && moves.get(priors + queue[j - 1]) < prior; j--)
+					queue[j] = queue[j - 1];
+				queue[j] = i;
+			}
+			for (int i = 0; i < batch; i++)
+				queue[i] = moves.get(queue[i]);
+		} else {
+			for (int i = 0; i < batch; i++)
+				queue[i] = moves.get(i);
+		}
+		queueStart = 0;
+		queueEnd = batch;
+	}
+
+	// the next untried move, the caller must check isQueueEmpty first
+	int nextUntried() {
+		return queue[queueStart++];
+	}
+
+	// hands the last move from nextUntried back, when no child could be made for it
+	void returnUntried() {
+		queueStart--;
+	}
+
+	// records child as the node reached by a move from nextUntried
+	void putChild(int move, int child) {
+		// slots holds pairs, keep it at most half full
+		if (children + 1 > slots.length / 4)
+			rehash(slots.length);
+		insert(slots, move, child);
+		children++;
+	}
+
+	// the child reached by move, NodeArena.NONE if it hasn't been tried
+	int child(int move) {
+		int mask = slots.length / 2 - 1;
+		for (int i = hash(move) & mask; ; i = (i + 1) & mask) {
+			int stored = slots[2 * i];
+			if (stored == move)
+				return slots[2 * i + 1];
+			if (stored == Move.NONE)
+				return NodeArena.NONE;
+		}
+	}
+
+	private void rehash(int capacity) {
+		int[] old = slots;
+		slots = emptySlots(capacity);
+		for (int i = 0; i < old.length; i += 2) {
+			if (old[i] != Move.NONE)
+				insert(slots, old[i], old[i + 1]);
+		}
+	}
+
+	private static void insert(int[] slots, int move, int child) {
+		int mask = slots.length / 2 - 1;
+		int i = hash(move) & mask;
+		while (slots[2 * i] != Move.NONE)
+			i = (i + 1) & mask;
+		slots[2 * i] = move;
+		slots[2 * i + 1] = child;
+	}
+
+	private static int[] emptySlots(int capacity) {
+		int[] slots = new int[2 * capacity];
+		Arrays.fill(slots, Move.NONE);
+		return slots;
+	}
+
+	private static int hash(int move) {
+		// from and to squares sit in the low bits, spread them over the whole int
+		int h = move * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
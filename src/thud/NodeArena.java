@@ -0,0 +1,298 @@
+package thud;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Storage for the nodes of a MonteCarloPlay search tree, struct of arrays style: a node is an int index into
+ * parallel primitive arrays instead of an object with its own lists.  A node takes about BYTES_PER_NODE bytes, its
+ * slots in the arrays plus its share of the MoveIndex objects of expanded nodes.
+ *
+ * Per node:
+ *     move        the move leading to it (Move.NONE for a root)
+ *     parent      index of the parent node, NONE for the root
+ *     firstChild  head of the list of children, NONE for a leaf
+ *     sibling     next child of the same parent
+ *     childCount  number of children
+ *     info        number of legal moves in its position * 2, plus 1 when trolls are to move
+ *     key         position key (see Player.getPositionKey)
+ *     stats       visits*2^32 + wins, packed like TranspositionTable entries so a result is a single atomic add
+ *     amaf        all-moves-as-first visits and wins of its move, packed the same way (see MonteCarloPlay)
+ *     index       its next untried moves and a move to child index (see MoveIndex), made on its first expansion
+ *
+ * The arrays are split into fixed size pages so the arena can grow while other threads read it.  A node's move,
+ * parent, sibling, info and key are written before it is linked to its parent, and the link is a volatile write,
+ * so threads that reach a node through its parent see all of them.  Children are only added under lockFor(node).
+ *
+ * The arena holds at most maxNodes live nodes, allocate fails once it is full.  Freed nodes (see freeExcept and
+ * prune) go on a free list, chained through sibling, and are handed out again before any new page is touched, so a
+ * long search settles into a fixed set of pages instead of leaving old subtrees to the garbage collector.
+ * Freeing must not run while other threads search the tree.
+ */
+final class NodeArena {
+	static final int NONE = -1;
+	// parent of a node on the free list
+	private static final int FREED = -2;
+
+	// rough heap cost of a node, including its share of the MoveIndex objects of expanded nodes, for turning a
+	// memory budget into a node budget
+	static final int BYTES_PER_NODE = 96;
+
+	private static final int PAGE_BITS = 14;
+	private static final int PAGE_SIZE = 1 << PAGE_BITS;
+	private static final int PAGE_MASK = PAGE_SIZE - 1;
+	private static final int LOCK_STRIPES = 256;
+
+	private static final class Page {
+		final int[] move = new int[PAGE_SIZE];
+		final int[] parent = new int[PAGE_SIZE];
+		final int[] sibling = new int[PAGE_SIZE];
+		final int[] info = new int[PAGE_SIZE];
+		final long[] key = new long[PAGE_SIZE];
+		final AtomicIntegerArray firstChild = new AtomicIntegerArray(PAGE_SIZE);
+		final AtomicIntegerArray childCount = new AtomicIntegerArray(PAGE_SIZE);
+		final AtomicLongArray stats = new AtomicLongArray(PAGE_SIZE);
+		final AtomicLongArray amaf = new AtomicLongArray(PAGE_SIZE);
+		final MoveIndex[] index = new MoveIndex[PAGE_SIZE];
+	}
+
+	// enough page slots for maxNodes: a new index is only handed out while no node is free, so every index is below
+	// the node budget
+	private final AtomicReferenceArray<Page> pages;
+	private final Object[] locks = new Object[LOCK_STRIPES];
+	private final int maxNodes;
+	// live nodes
+	private final AtomicInteger size = new AtomicInteger();
+	// indices below this have been handed out at least once
+	private final AtomicInteger highWater = new AtomicInteger();
+	private final Object freeLock = new Object();
+	private int freeHead = NONE;
+	// scratch lists of freeExcept and prune, reused so freeing allocates nothing once they have grown
+	private final IntList freeStack = new IntList();
+	private final IntList parentVisits = new IntList();
+
+	NodeArena(int maxNodes) {
+		if (maxNodes < 1)
+			throw new IllegalArgumentException("Node budget must be positive");
+
+		this.maxNodes = maxNodes;
+		pages = new AtomicReferenceArray<>(((maxNodes - 1) >>> PAGE_BITS) + 1);
+		for (int i = 0; i < LOCK_STRIPES; i++)
+			locks[i] = new Object();
+	}
+
+	// number of live nodes
+	int size() {
+		return size.get();
+	}
+
+	boolean isFull() {
+		return size.get() >= maxNodes;
+	}
+
+	// A new node with no children or statistics, not yet linked to its parent (see addChild).
+	// Returns NONE if the arena is full.
+	int allocate(int move, int parent, long key, BoardStates turn, int moveCount) {
+		int live;
+		do {
+			live = size.get();
+			if (live >= maxNodes)
+				return NONE;
+		} while (!size.compareAndSet(live, live + 1));
+
+		int node = NONE;
+		synchronized (freeLock) {
+			if (freeHead != NONE) {
+				node = freeHead;
+				freeHead = sibling(node);
+			}
+		}
+		if (node == NONE)
+			node = highWater.getAndIncrement();
+
+		Page page = page(node);
+		int i = node & PAGE_MASK;
+		page.move[i] = move;
+		page.parent[i] = parent;
+		page.sibling[i] = NONE;
+		page.info[i] = (moveCount << 1) | ((turn == BoardStates.TROLL) ? 1 : 0);
+		page.key[i] = key;
+		page.firstChild.set(i, NONE);
+		page.childCount.set(i, 0);
+		page.stats.set(i, 0);
+		page.amaf.set(i, 0);
+		page.index[i] = null;
+		return node;
+	}
+
+	private Page page(int node) {
+		int index = node >>> PAGE_BITS;
+		Page page = pages.get(index);
+		if (page == null) {
+			pages.compareAndSet(index, null, new Page());
+			page = pages.get(index);
+		}
+		return page;
+	}
+
+	// links child in as the first child of parent and indexes it by its move, the caller must hold lockFor(parent)
+	// and have given parent its MoveIndex
+	void addChild(int parent, int child) {
+		Page childPage = page(child), parentPage = page(parent);
+		int p = parent & PAGE_MASK;
+		parentPage.index[p].putChild(childPage.move[child & PAGE_MASK], child);
+		childPage.sibling[child & PAGE_MASK] = parentPage.firstChild.get(p);
+		parentPage.firstChild.set(p, child);
+		parentPage.childCount.incrementAndGet(p);
+	}
+
+	// null until the node is first expanded, only used under lockFor(node) while the tree is searched
+	MoveIndex moveIndex(int node) {
+		return page(node).index[node & PAGE_MASK];
+	}
+
+	void setMoveIndex(int node, MoveIndex index) {
+		page(node).index[node & PAGE_MASK] = index;
+	}
+
+	Object lockFor(int node) {
+		return locks[node & (LOCK_STRIPES - 1)];
+	}
+
+	int move(int node) {
+		return page(node).move[node & PAGE_MASK];
+	}
+
+	int parent(int node) {
+		return page(node).parent[node & PAGE_MASK];
+	}
+
+	void setParent(int node, int parent) {
+		page(node).parent[node & PAGE_MASK] = parent;
+	}
+
+	int firstChild(int node) {
+		return page(node).firstChild.get(node & PAGE_MASK);
+	}
+
+	int sibling(int node) {
+		return page(node).sibling[node & PAGE_MASK];
+	}
+
+	int childCount(int node) {
+		return page(node).childCount.get(node & PAGE_MASK);
+	}
+
+	int moveCount(int node) {
+		return page(node).info[node & PAGE_MASK] >>> 1;
+	}
+
+	BoardStates turn(int node) {
+		return ((page(node).info[node & PAGE_MASK] & 1) != 0) ? BoardStates.TROLL : BoardStates.DWARF;
+	}
+
+	long key(int node) {
+		return page(node).key[node & PAGE_MASK];
+	}
+
+	long stats(int node) {
+		return page(node).stats.get(node & PAGE_MASK);
+	}
+
+	// adds a packed visits/wins delta to the node's statistics
+	void addStats(int node, long delta) {
+		page(node).stats.addAndGet(node & PAGE_MASK, delta);
+	}
+
+	long amaf(int node) {
+		return page(node).amaf.get(node & PAGE_MASK);
+	}
+
+	void addAmaf(int node, long delta) {
+		page(node).amaf.addAndGet(node & PAGE_MASK, delta);
+	}
+
+	// the child of node reached by move, NONE if it hasn't been expanded
+	int findChild(int node, int move) {
+		MoveIndex index = moveIndex(node);
+		return (index != null) ? index.child(move) : NONE;
+	}
+
+	// Frees root and everything under it, except the subtree under keep (which may be NONE).
+	void freeExcept(int root, int keep) {
+		freeStack.clear();
+		freeStack.add(root);
+		while (!freeStack.isEmpty()) {
+			int node = freeStack.removeLast();
+			if (node == keep)
+				continue;
+			for (int child = firstChild(node); child != NONE; child = sibling(child))
+				freeStack.add(child);
+			free(node);
+		}
+	}
+
+	// Cuts the least visited subtrees off the tree under root until at most target nodes are left, or as close
+	// as it can get without touching the root and its children.  Returns the number of nodes freed.
+	//
+	// Every playOut through a node passes its parent, so visits only drop going down the tree.  Freeing the
+	// children of every node (below the root) with at most some number of visits therefore frees exactly the nodes
+	// whose parent has that few visits, and the smallest such number that frees enough is read off a sorted list.
+	int prune(int root, int target) {
+		int excess = size() - target;
+		if (excess <= 0)
+			return 0;
+
+		int top = highWater.get();
+		parentVisits.clear();
+		for (int node = 0; node < top; node++) {
+			int parent = parent(node);
+			if (parent >= 0 && parent != root)
+				parentVisits.add(TranspositionTable.visits(stats(parent)));
+		}
+		if (parentVisits.isEmpty())
+			return 0;
+
+		parentVisits.sort();
+		int threshold = parentVisits.get(Math.min(excess, parentVisits.size()) - 1);
+
+		int before = size();
+		for (int node = 0; node < top; node++) {
+			int parent = parent(node);
+			if (parent == FREED || node == root || firstChild(node) == NONE)
+				continue;
+			if (TranspositionTable.visits(stats(node)) > threshold)
+				continue;
+
+			freeChildren(node);
+		}
+		return before - size();
+	}
+
+	// frees everything under node, leaving it a leaf
+	private void freeChildren(int node) {
+		for (int child = firstChild(node); child != NONE; ) {
+			// free reuses sibling for the free list, so read it first
+			int next = sibling(child);
+			freeExcept(child, NONE);
+			child = next;
+		}
+		Page page = page(node);
+		page.firstChild.set(node & PAGE_MASK, NONE);
+		page.childCount.set(node & PAGE_MASK, 0);
+		// the moves are generated again if the node is expanded again
+		page.index[node & PAGE_MASK] = null;
+	}
+
+	private void free(int node) {
+		setParent(node, FREED);
+		setMoveIndex(node, null);
+		synchronized (freeLock) {
+			page(node).sibling[node & PAGE_MASK] = freeHead;
+			freeHead = node;
+		}
+		size.decrementAndGet();
+	}
+}
@@ -0,0 +1,96 @@
+package thud;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read only opening book: move statistics per position, memory mapped straight from the file OpeningBookBuilder
+ * writes, so opening a book reads nothing up front and a lookup is a binary search over the mapped entries.
+ *
+ * File layout (big endian):
+ *     header  MAGIC, VERSION, entry count (ints)
+ *     entries sorted by position key, then move:
+ *             position key (long, see Player.getPositionKey), move (int, see Move), games (int),
+ *             wins (int, +1 per game won by the side that played the move and -1 per game lost)
+ *
+ * Lookups only read the buffer at absolute positions, so a book can be shared by any number of engines and threads.
+ */
+public final class OpeningBook {
+	static final int MAGIC = 0x54484244;  // "THBD"
+	static final int VERSION = 1;
+	static final int HEADER_BYTES = 12;
+	static final int ENTRY_BYTES = 20;
+
+	private final ByteBuffer entries;
+	private final int size;
+
+	private OpeningBook(ByteBuffer entries, int size) {
+		this.entries = entries;
+		this.size = size;
+	}
+
+	public static OpeningBook open(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long length = channel.size();
+			if (length < HEADER_BYTES)
+				throw new IOException("Not an opening book: " + file);
+
+			// the mapping stays valid after the channel is closed
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+			if (buffer.getInt(0) != MAGIC)
+				throw new IOException("Not an opening book: " + file);
+			if (buffer.getInt(4) != VERSION)
+				throw new IOException("Unsupported opening book version " + buffer.getInt(4) + ": " + file);
+			int size = buffer.getInt(8);
+			if (size < 0 || length != HEADER_BYTES + (long) size * ENTRY_BYTES)
+				throw new IOException("Opening book is truncated: " + file);
+
+			buffer.position(HEADER_BYTES);
+			return new OpeningBook(buffer.slice(), size);
+		}
+	}
+
+	// number of position/move entries
+	public int size() {
+		return size;
+	}
+
+	// The move played in the most games from the position, ties going to the one with more wins, or Move.NONE if the
+	// position isn't in the book or no move has been played in at least minGames games.
+	public int bestMove(long key, int minGames) {
+		int best = Move.NONE;
+		int bestGames = minGames - 1;
+		int bestWins = 0;
+		for (int i = firstEntry(key); i < size && key(i) == key; i++) {
+			int offset = i * ENTRY_BYTES;
+			int games = entries.getInt(offset + 12);
+			int wins = entries.getInt(offset + 16);
+			if (games > bestGames || (games == bestGames && best != Move.NONE && wins > bestWins)) {
+				best = entries.getInt(offset + 8);
+				bestGames = games;
+				bestWins = wins;
+			}
+		}
+		return best;
+	}
+
+	// index of the first entry with a key of at least key
+	private int firstEntry(long key) {
+		int low = 0, high = size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (key(mid) < key)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+
+	private long key(int entry) {
+		return entries.getLong(entry * ENTRY_BYTES);
+	}
+}
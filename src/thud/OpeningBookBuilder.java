@@ -0,0 +1,140 @@
+package thud;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Builds an OpeningBook offline from whole games: self-play games between two MonteCarloPlay engines, saved games
+ * (the files RecordsManager writes), or any move log passed to addGame.
+ *
+ * Every position of the first maxPly plies of a game counts a game for the move played from it, won or lost by
+ * the side that played it.  A game is won by the side ahead at the end at calculateScores' values, so games cut
+ * short still count, the starting position is level.
+ *
+ * Usage: OpeningBookBuilder book.bin selfPlayGames [savefile...]
+ */
+public final class OpeningBookBuilder {
+	public static final int DEFAULT_MAX_PLY = 16;
+	// self-play settings, enough for sensible games without taking all day
+	static final int SELF_PLAY_PLAYOUTS = 2000;
+	static final int SELF_PLAY_MAX_PLY = 120;
+
+	private final int maxPly;
+	// position key -> move -> {games, wins}, sorted the way the book file is
+	private final TreeMap<Long, TreeMap<Integer, int[]>> stats = new TreeMap<>();
+
+	public OpeningBookBuilder() {
+		this(DEFAULT_MAX_PLY);
+	}
+
+	public OpeningBookBuilder(int maxPly) {
+		if (maxPly < 1)
+			throw new IllegalArgumentException("Book must cover at least one ply");
+		this.maxPly = maxPly;
+	}
+
+	// Adds a game played from the standard opening (Player.initializeGame), replaying it to check its moves.
+	public void addGame(IntList moveLog) {
+		Player player = new Player(new Board());
+		PlayState turn = player.initializeGame();
+		int plies = Math.min(maxPly, moveLog.size());
+		long[] keys = new long[plies];
+		BoardStates[] movers = new BoardStates[plies];
+		for (int i = 0; i < moveLog.size(); i++) {
+			if (i < plies) {
+				keys[i] = player.getPositionKey(turn);
+				movers[i] = turn.getTurn();
+			}
+			player.play(turn, moveLog.get(i));
+		}
+
+		Board board = player.getBoard();
+		int dwarfMargin = board.getNumDwarfs() * Player.DWARF_POINTS - board.getNumTrolls() * Player.TROLL_POINTS;
+		for (int i = 0; i < plies; i++) {
+			int[] moveStats = stats.computeIfAbsent(keys[i], key -> new TreeMap<>())
+					.computeIfAbsent(moveLog.get(i), move -> new int[2]);
+			moveStats[0]++;
+			moveStats[1] += (movers[i] == BoardStates.DWARF) ? Integer.signum(dwarfMargin) : -Integer.signum(dwarfMargin);
+		}
+	}
+
+	// Plays a game between two MonteCarloPlay engines, playouts per move, and adds it.
+	public void addSelfPlayGame(int playouts) {
+		MonteCarloPlay dwarfs = new MonteCarloPlay(BoardStates.DWARF);
+		MonteCarloPlay trolls = new MonteCarloPlay(BoardStates.TROLL);
+		try {
+			Player player = new Player(new Board());
+			PlayState turn = player.initializeGame();
+			Board board = player.getBoard();
+			for (int ply = 0; ply < SELF_PLAY_MAX_PLY; ply++) {
+				if (board.getNumDwarfs() == 0 || board.getNumTrolls() == 0)
+					break;
+
+				boolean dwarfTurn = turn.isTurn(BoardStates.DWARF);
+				int move = (dwarfTurn ? dwarfs : trolls).selectPlay(playouts);
+				if (move == Move.NONE)
+					break;
+				player.play(turn, move);
+				(dwarfTurn ? trolls : dwarfs).opponentPlay(move);
+			}
+			addGame(player.getMoveLog());
+		} finally {
+			dwarfs.shutdown();
+			trolls.shutdown();
+		}
+	}
+
+	// number of position/move entries so far
+	public int size() {
+		int size = 0;
+		for (TreeMap<Integer, int[]> moves : stats.values())
+			size += moves.size();
+		return size;
+	}
+
+	public void write(Path file) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+			out.writeInt(OpeningBook.MAGIC);
+			out.writeInt(OpeningBook.VERSION);
+			out.writeInt(size());
+			for (Map.Entry<Long, TreeMap<Integer, int[]>> position : stats.entrySet()) {
+				for (Map.Entry<Integer, int[]> move : position.getValue().entrySet()) {
+					out.writeLong(position.getKey());
+					out.writeInt(move.getKey());
+					out.writeInt(move.getValue()[0]);
+					out.writeInt(move.getValue()[1]);
+				}
+			}
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Proper Usage: OpeningBookBuilder book.bin selfPlayGames [savefile...]");
+			System.exit(1);
+		}
+
+		OpeningBookBuilder builder = new OpeningBookBuilder();
+		int games = Integer.parseInt(args[1]);
+		for (int i = 0; i < games; i++) {
+			builder.addSelfPlayGame(SELF_PLAY_PLAYOUTS);
+			System.out.printf("Self-play game %d of %d done\n", i + 1, games);
+		}
+
+		for (int i = 2; i < args.length; i++) {
+			RecordsManager records = new RecordsManager();
+			records.loadFile(args[i]);
+			for (IntList moveLog : records.getMoveLogs())
+				builder.addGame(moveLog);
+		}
+
+		builder.write(Paths.get(args[0]));
+		System.out.printf("Wrote %d entries to %s\n", builder.size(), args[0]);
+	}
+}
@@ -0,0 +1,71 @@
+package thud;
+
+/**
+ * The squares of one side's pieces, kept as a dense array plus a square to slot reverse map.
+ *
+ * Adding, moving and removing a piece are O(1): a moved piece keeps its slot, so iteration order is stable
+ * from move to move (and identical between copies), while a removed piece's slot is filled by the last piece.
+ * restore undoes a remove exactly, putting the piece back in its old slot, as long as removes are undone in
+ * reverse order (as Player.undo does).
+ */
+public final class PieceList {
+	private final int[] squares = new int[BitBoard.SQUARES];
+	private final int[] slots = new int[BitBoard.SQUARES];
+	private int size;
+
+	PieceList() {
+	}
+
+	PieceList(PieceList other) {
+		set(other);
+	}
+
+	void set(PieceList other) {
+		System.arraycopy(other.squares, 0, squares, 0, other.size);
+		System.arraycopy(other.slots, 0, slots, 0, BitBoard.SQUARES);
+		size = other.size;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	// square of the piece in the given slot, 0 <= slot < size()
+	public int get(int slot) {
+		return squares[slot];
+	}
+
+	void clear() {
+		size = 0;
+	}
+
+	void add(int square) {
+		squares[size] = square;
+		slots[square] = size;
+		size++;
+	}
+
+	void move(int from, int to) {
+		int slot = slots[from];
+		squares[slot] = to;
+		slots[to] = slot;
+	}
+
+	// returns the slot the piece occupied, which restore needs to undo this
+	int remove(int square) {
+		int slot = slots[square];
+		int last = squares[--size];
+		squares[slot] = last;
+		slots[last] = slot;
+		return slot;
+	}
+
+	void restore(int square, int slot) {
+		int displaced = squares[slot];
+		squares[size] = displaced;
+		slots[displaced] = size;
+		squares[slot] = square;
+		slots[square] = slot;
+		size++;
+	}
+}
@@ -4,15 +4,18 @@ package thud;
  * Created by Thai Flowers on 6/9/2017.
  * Represents the current play state sans the board and piece positions.
  * In other words it holds the current player turn (stored as a BoardState for convenience) and if this is a removeTurn.
+ * Also keeps the Zobrist key of that state (see Zobrist), updated whenever either field changes.
  */
 public class PlayState {
 
 	BoardStates turn;
 	boolean removeTurn;
+	long hash;
 
 	public PlayState() {
 		turn = BoardStates.DWARF;
 		removeTurn = false;
+		hash = Zobrist.turnKey(turn, removeTurn);
 	}
 
 	public PlayState(PlayState other) {
@@ -22,19 +25,26 @@ public class PlayState {
 	public PlayState(BoardStates turn, boolean removeTurn) {
 		this.turn = turn;
 		this.removeTurn = removeTurn;
+		this.hash = Zobrist.turnKey(turn, removeTurn);
 	}
 
 	public void set(PlayState other) {
 		this.turn = other.turn;
 		this.removeTurn = other.removeTurn;
+		this.hash = other.hash;
 	}
 
 	public void alternateTurn() {
 		if (!removeTurn) {
 			turn = (turn.equals(BoardStates.DWARF)) ? BoardStates.TROLL : BoardStates.DWARF;
+			hash ^= Zobrist.TROLL_TURN;
 		}
 	}
 
+	public long getHash() {
+		return hash;
+	}
+
 	public boolean isTurn(BoardStates side) {
 		return turn.equals(side);
 	}
@@ -44,6 +54,8 @@ public class PlayState {
 	}
 
 	public void setTurn(BoardStates turn) {
+		if (this.turn != turn)
+			hash ^= Zobrist.TROLL_TURN;
 		this.turn = turn;
 	}
 
@@ -52,6 +64,8 @@ public class PlayState {
 	}
 
 	public void setRemoveTurn(boolean removeTurn) {
+		if (this.removeTurn != removeTurn)
+			hash ^= Zobrist.REMOVE_TURN;
 		this.removeTurn = removeTurn;
 	}
 }
@@ -2,6 +2,7 @@ package thud;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 import static java.lang.Math.abs;
 
@@ -14,12 +15,35 @@ import static java.lang.Math.abs;
  *
  * board is an injected dependency
  * moveLog is optionally injected (call replayMoveLog after construction)
+ *
+ * Moves are packed ints (see Move), the String overloads of play and getPossibleMoves only exist for callers
+ * working with the text notation and convert at the boundary.
+ *
+ * Every play is recorded on an undo stack so it can be taken back exactly with undo, this lets the ai search
+ * on a single board instead of copying it for each node and playout.
  */
 public class Player {
 
+	// undo entries hold the move in the low bits and the prior PlayState above it
+	private static final int MOVE_MASK = (1 << 26) - 1;
+	private static final int UNDO_TROLL_TURN = 1 << 26;
+	private static final int UNDO_REMOVE_TURN = 1 << 27;
+	// set for plays made with playTrusted, which don't go in the move log
+	private static final int UNDO_UNLOGGED = 1 << 28;
+
+	// points per surviving piece, see calculateScores
+	public static final int DWARF_POINTS = 10;
+	public static final int TROLL_POINTS = 40;
+
 	private Board board;
-	private List<String> moveLog = new ArrayList<>();
+	private IntList moveLog = new IntList();
+	// one entry per play: the packed move plus the PlayState it was played from (see play),
+	// preceded by the piece list slot of every piece it captured (so undo can put them back in place)
+	private IntList undoStack = new IntList();
 	private int[] scores = new int[] {0,0}; // use mod 2 arithmetic to access index while scoring
+	// scratch space for randomMove, one move count per piece list slot and one piece's moves
+	private final int[] pieceMoveCounts = new int[BitBoard.SQUARES];
+	private final IntList pieceMoves = new IntList(64);
 
 	public Player(Board board) {
 		this.board = board;
@@ -27,13 +51,15 @@ public class Player {
 
 	public Player(Player other) {
 		this.board = new Board(other.board);
-		this.moveLog = new ArrayList<>(other.moveLog);
+		this.moveLog = new IntList(other.moveLog);
+		this.undoStack = new IntList(other.undoStack);
 	}
 
 	// set board to initial game board (all pieces in default position)
 	// returns playState for initial game state
 	public PlayState initializeGame() {
 		board.initializeBoard();
+		undoStack.clear();
 
 		// Set thud stone in center surrounded by the Trolls
 		board.setAtPosition(new BoardPoint(7, 7), BoardStates.STONE);
@@ -73,82 +99,103 @@ public class Player {
 	// replay the moves for a single round
 	// replaying a move modifies the log, so to pull off proper injection we make an empty one
 	// replay with it and then set this.moveLog to hold reference to the injected moveLog
+	public PlayState replayMoveLog(IntList moveLog) {
+		this.moveLog = new IntList();
+		board.initializeBoard();
+		PlayState turn = initializeGame();
+		for (int i=0; i<moveLog.size(); i++)
+			play(turn, moveLog.get(i));
+		this.moveLog = moveLog;
+		return turn;
+	}
+
+	// text form of the above, the log is parsed as it is replayed and kept in packed form
 	public PlayState replayMoveLog(List<String> moveLog) {
-		this.moveLog = new ArrayList<>();
+		this.moveLog = new IntList();
 		board.initializeBoard();
 		PlayState turn = initializeGame();
 		for (String move : moveLog)
 			play(turn, move);
-		this.moveLog = moveLog;
 		return turn;
 	}
 
-	public List<String> getMoveLog() { return moveLog; }
+	public IntList getMoveLog() { return moveLog; }
 
 	// originally failed with exception if moveLog was empty,
 	// so it returns " " to deal with this case
 	public String getLastMove() {
+		return Move.toString(getLastMoveCode());
+	}
+
+	// packed form of getLastMove, Move.NONE if nothing has been played
+	public int getLastMoveCode() {
 		int size = moveLog.size();
-		return (size == 0) ? " " : moveLog.get(size-1);
+		return (size == 0) ? Move.NONE : moveLog.get(size-1);
 	}
 
 	public void calculateScores(int round) {
 		if (round<=0 || round>2)
 			throw new IllegalArgumentException();
 
-		scores[(round-1) % 2] = board.getNumDwarfs() * 10;
-		scores[(round) % 2] = board.getNumTrolls() * 40;
+		scores[(round-1) % 2] = board.getNumDwarfs() * DWARF_POINTS;
+		scores[(round) % 2] = board.getNumTrolls() * TROLL_POINTS;
 	}
 
 	public int[] getScores() { return scores; }
 
 	public Board getBoard() { return board; }
 
+	// Zobrist key of the whole position: pieces, side to move and, on a remove turn, which troll may capture
+	public long getPositionKey(PlayState turn) {
+		long key = board.getHash() ^ turn.getHash();
+		if (turn.isRemoveTurn()) {
+			key ^= Zobrist.REMOVE_ANCHOR[Move.to(previousMove())];
+			if (mustRemove())
+				key ^= Zobrist.MUST_REMOVE;
+		}
+		return key;
+	}
+
 	public void play(PlayState turn, String move) {
+		play(turn, Move.parse(move, previousMove()));
+	}
+
+	public void play(PlayState turn, int move) {
 
-		move = move.toUpperCase(); // for uniformity and to ease comparisons
-		String[] order = move.split(" ");
+		int command = Move.command(move);
+		int undoEntry = move
+				| (turn.isTurn(BoardStates.TROLL) ? UNDO_TROLL_TURN : 0)
+				| (turn.isRemoveTurn() ? UNDO_REMOVE_TURN : 0);
 
 		if (turn.isRemoveTurn()) {
-			if (!order[0].equals("R"))
+			if (command != Move.REMOVE)
 				throw new IllegalArgumentException("Remove turn must be a remove command!");
 			if (!turn.isTurn(BoardStates.TROLL))
 				// shouldn't get here
 				throw new IllegalArgumentException("Only Trolls can remove in standard Thud!");
 
-			// below used to use Math.max(order.length-1, 0) as the index, can't tell if that's vestigial,
-			// but it seems like order.length-1 being negative seems impossible due to first if in this block
-			BoardPoint[] removePositions = new BoardPoint[order.length-1];
-			for (int i=1; i<order.length; i++) {
-				removePositions[i - 1] = new BoardPoint(order[i]);
-			}
-
-			// called even if removePositions is zero length so that move is properly recorded
-			removePlay(removePositions);
+			// called even if there are no captures so that move is properly recorded
+			removePlay(move);
 			turn.setRemoveTurn(false);
 		}
 		else {
-			if (order.length != 3)
-				throw new IllegalArgumentException("Move must be of form Command StartPos [EndPos]");
-			if (order[0].length() != 1)
-				throw new IllegalArgumentException("Command must be a single letter");
+			if (command == Move.REMOVE)
+				throw new IllegalArgumentException("Previous move doesn't allow captures!");
 
-			char ch = order[0].charAt(0);
+			int startPos = Move.from(move);
+			int endPos   = Move.to(move);
 
-			BoardPoint startPos = new BoardPoint(order[1]);
-			BoardPoint endPos   = new BoardPoint(order[2]);
-
-			if (startPos.equals(endPos))
+			if (startPos == endPos)
 				throw new IllegalArgumentException("Movement can't be to the same square");
 
 			boolean removeTurn;
 			switch (turn.getTurn()) {
 				case DWARF:
-					removeTurn = playDwarf(ch, startPos, endPos);
+					removeTurn = playDwarf(command, startPos, endPos);
 					turn.setRemoveTurn(removeTurn);
 					break;
 				case TROLL:
-					removeTurn = playTroll(ch, startPos, endPos);
+					removeTurn = playTroll(command, startPos, endPos);
 					turn.setRemoveTurn(removeTurn);
 					break;
 			}
@@ -156,9 +203,87 @@ public class Player {
 
 		// necessary for multi-move turns (that is Troll captures)
 		moveLog.add(move);
+		undoStack.add(undoEntry);
+		turn.alternateTurn();
+	}
+
+	// Plays a move known to be legal, such as one from getPossibleMoves, without any rule checks and without
+	// recording it in the move log.  For search and playouts only, the result is undefined for illegal moves.
+	// It is still recorded for undo, which takes back trusted and checked plays alike.
+	void playTrusted(PlayState turn, int move) {
+		int from = Move.from(move);
+		int to = Move.to(move);
+		int undoEntry = move | UNDO_UNLOGGED
+				| (turn.isTurn(BoardStates.TROLL) ? UNDO_TROLL_TURN : 0)
+				| (turn.isRemoveTurn() ? UNDO_REMOVE_TURN : 0);
+
+		switch (Move.command(move)) {
+			case Move.MOVE:
+				board.movePiece(from, to);
+				turn.setRemoveTurn(turn.isTurn(BoardStates.TROLL) && board.adjacentToAny(BoardStates.DWARF, to));
+				break;
+			case Move.HURL:
+				undoStack.add(board.removePiece(to));
+				board.movePiece(from, to);
+				break;
+			case Move.SHOVE:
+				board.movePiece(from, to);
+				turn.setRemoveTurn(true);
+				break;
+			case Move.REMOVE:
+				int captures = Move.captures(move);
+				for (int dir=0; dir<8; dir++) {
+					if ((captures & (1 << dir)) != 0)
+						undoStack.add(board.removePiece(BitBoard.step(from, dir)));
+				}
+				turn.setRemoveTurn(false);
+				break;
+		}
+
+		undoStack.add(undoEntry);
 		turn.alternateTurn();
 	}
 
+	// Takes back the last play, restoring the board, the move log and turn to exactly what they were before it
+	public void undo(PlayState turn) {
+		if (undoStack.isEmpty())
+			throw new IllegalStateException("Nothing to undo");
+
+		int entry = undoStack.removeLast();
+		int move = entry & MOVE_MASK;
+		int from = Move.from(move);
+		int to = Move.to(move);
+
+		switch (Move.command(move)) {
+			case Move.MOVE:
+			case Move.SHOVE:
+				board.movePiece(to, from);
+				break;
+			case Move.HURL:
+				board.movePiece(to, from);
+				board.restorePiece(BoardStates.TROLL, to, undoStack.removeLast());
+				break;
+			case Move.REMOVE:
+				// captures were removed in direction order, so restore them in reverse
+				int captures = Move.captures(move);
+				for (int dir=7; dir>=0; dir--) {
+					if ((captures & (1 << dir)) != 0)
+						board.restorePiece(BoardStates.DWARF, BitBoard.step(from, dir), undoStack.removeLast());
+				}
+				break;
+		}
+
+		if ((entry & UNDO_UNLOGGED) == 0)
+			moveLog.removeLast();
+		turn.setTurn(((entry & UNDO_TROLL_TURN) != 0) ? BoardStates.TROLL : BoardStates.DWARF);
+		turn.setRemoveTurn((entry & UNDO_REMOVE_TURN) != 0);
+	}
+
+	// the move the position was last changed by, Move.NONE at the start of a game
+	private int previousMove() {
+		return undoStack.isEmpty() ? Move.NONE : (undoStack.last() & MOVE_MASK);
+	}
+
 	// Assumes already checked for troll turn
 	// Used to be a part of removePlay and was cleaner + more efficient,
 	// but this test needed to be used in removePlay, main (used to use hack), and gui
@@ -166,70 +291,58 @@ public class Player {
 	// Also as implied in a comment in main, this makes more sense to be here than playState
 	// as this is dependent on game rules, whereas PlayState should just hold state data
 	public boolean mustRemove() {
-		if (moveLog.size()==0)
+		int prevMove = previousMove();
+		if (prevMove == Move.NONE)
 			return false;
 
-		// use log to retrieve last move endPos and command
 		// if old command is 'M' or 'R' option capture (empty line after 'R')
 		// if old command is 'S' MUST capture at least one dwarf
-		String prevMove = moveLog.get(moveLog.size()-1);
-		String[] prevOrder = prevMove.split(" ");
-
-		boolean mustCapture;
-		switch (prevOrder[0].charAt(0)) {
-			case 'M':
-			case 'R':
-				mustCapture = false;
-				break;
-			case 'S':
-				mustCapture = true;
-				break;
-			default:
-				mustCapture = false;
-		}
-		return mustCapture;
+		return Move.command(prevMove) == Move.SHOVE;
 	}
 
 	// Troll only special play, assumes this is already checked (as in play() above)
-	private void removePlay(BoardPoint[] removePositions) {
-		// begin retrieving anchorPos (old endPos)
-		String oldMove = moveLog.get(moveLog.size()-1);
-		String[] oldOrder = oldMove.split(" ");
-
-		char oldCommand = oldOrder[0].charAt(0);
-		if (!(oldCommand=='M' || oldCommand=='R' || oldCommand=='S'))
+	private void removePlay(int move) {
+		// anchorPos is the old endPos
+		int oldMove = previousMove();
+		if (oldMove == Move.NONE || !(Move.command(oldMove) == Move.MOVE || Move.command(oldMove) == Move.SHOVE))
 			throw new IllegalArgumentException("Previous move doesn't allow captures!");
 
-		boolean mustCapture = mustRemove();
-
-		BoardPoint anchorPos = new BoardPoint(oldOrder[2]);
+		int anchor = Move.to(oldMove);
+		if (Move.from(move) != anchor)
+			throw new IllegalArgumentException("Only the troll that just moved can capture");
 
-		if (mustCapture && (removePositions.length == 0))
+		int captures = Move.captures(move);
+		if (mustRemove() && (captures == 0))
 			throw new IllegalArgumentException("You must capture at least one dwarf");
 
 		// first iteration check all removePositions are valid
-		for (BoardPoint pos : removePositions) {
-			if (!board.getAtPosition(pos).equals(BoardStates.DWARF))
-				throw new IllegalArgumentException("Not a dwarf");
-			if (abs(anchorPos.row - pos.row) > 1 || abs(anchorPos.col - pos.col) > 1)
+		for (int dir=0; dir<8; dir++) {
+			if ((captures & (1 << dir)) == 0)
+				continue;
+			int pos = BitBoard.step(anchor, dir);
+			if (pos < 0)
 				throw new IllegalArgumentException("Dwarf is not adjacent to the troll");
+			if (!board.getAtSquare(pos).equals(BoardStates.DWARF))
+				throw new IllegalArgumentException("Not a dwarf");
 		}
 
 		// second iteration perform removes,
 		// old code could remove a few and then encounter error leaving board state invalid
-		for (BoardPoint pos : removePositions)
-            board.removePiece(pos);
+		for (int dir=0; dir<8; dir++) {
+			if ((captures & (1 << dir)) != 0)
+				undoStack.add(board.removePiece(BitBoard.step(anchor, dir)));
+		}
 	}
 
-	private boolean playDwarf(char command, BoardPoint startPos, BoardPoint endPos) {
+	private boolean playDwarf(int command, int startPos, int endPos) {
 
 		switch (command) {
-			case 'M':
-				if (!board.getAtPosition(startPos).equals(BoardStates.DWARF))
+			case Move.MOVE:
+				if (!board.getAtSquare(startPos).equals(BoardStates.DWARF))
 					throw new IllegalArgumentException("Start piece is not a dwarf");
-				if (!board.getAtPosition(endPos).equals(BoardStates.FREE))
+				if (!board.isFree(endPos))
 					throw new IllegalArgumentException("End position is not free (did you mean to 'H'url?)");
-				if (!board.positionsAreLinear(startPos, endPos))
+				if (BitBoard.direction(startPos, endPos) < 0)
 					throw new IllegalArgumentException("Dwarf must move like chess queen");
 				if (!board.clearPathBetween(startPos, endPos))
 					throw new IllegalArgumentException("Path is blocked by another piece");
@@ -237,16 +350,16 @@ public class Player {
 				board.movePiece(startPos, endPos);
 
 				break;
-			case 'H':
-				if (!board.getAtPosition(startPos).equals(BoardStates.DWARF))
+			case Move.HURL:
+				if (!board.getAtSquare(startPos).equals(BoardStates.DWARF))
 					throw new IllegalArgumentException("Start piece is not a dwarf");
-				if (!board.getAtPosition(endPos).equals(BoardStates.TROLL))
+				if (!board.getAtSquare(endPos).equals(BoardStates.TROLL))
 					throw new IllegalArgumentException("End position is not a troll");
 				if (!distanceAttackCheck(BoardStates.DWARF, startPos, endPos))
 					throw new IllegalArgumentException("Hurl path is not clear or not edge troll");
 
 				// remember a hurl is a capture
-				board.removePiece(endPos);
+				undoStack.add(board.removePiece(endPos));
 				board.movePiece(startPos, endPos);
 
 				break;
@@ -257,25 +370,26 @@ public class Player {
 		return false;
 	}
 
-	private boolean playTroll(char command, BoardPoint startPos, BoardPoint endPos) {
+	private boolean playTroll(int command, int startPos, int endPos) {
 		switch (command) {
-			case 'M':
-				if (!board.getAtPosition(startPos).equals(BoardStates.TROLL))
+			case Move.MOVE:
+				if (!board.getAtSquare(startPos).equals(BoardStates.TROLL))
 					throw new IllegalArgumentException("Start piece is not a troll");
-				if (!board.getAtPosition(endPos).equals(BoardStates.FREE))
+				if (!board.isFree(endPos))
 					throw new IllegalArgumentException("End position is not free");
 
-				if (abs(startPos.row -endPos.row) > 1 || abs(startPos.col -endPos.col) > 1)
+				if (abs(BitBoard.row(startPos) - BitBoard.row(endPos)) > 1
+						|| abs(BitBoard.col(startPos) - BitBoard.col(endPos)) > 1)
 					throw new IllegalArgumentException("Troll must move like chess king");
 
 				board.movePiece(startPos, endPos);
 
 				// if we end up next to dwarfs, allow captures
 				return board.adjacentToAny(BoardStates.DWARF, endPos);
-			case 'S':
-				if (!board.getAtPosition(startPos).equals(BoardStates.TROLL))
+			case Move.SHOVE:
+				if (!board.getAtSquare(startPos).equals(BoardStates.TROLL))
 					throw new IllegalArgumentException("Start piece is not a troll");
-				if (!board.getAtPosition(endPos).equals(BoardStates.FREE))
+				if (!board.isFree(endPos))
 					throw new IllegalArgumentException("End position is not free");
 				if (!board.adjacentToAny(BoardStates.DWARF, endPos))
 					throw new IllegalArgumentException("End position is not adjacent to a dwarf");
@@ -295,42 +409,20 @@ public class Player {
 
 	// assumes valid startPos and endPos (including size and positionOnBoard)
 	// assumes rules for endPos are already enforced (Troll land adjacent to Dwarf, Dwarf land on Troll)
-	private boolean distanceAttackCheck(BoardStates turn, BoardPoint startPos, BoardPoint endPos) {
-		// figure out type of line (3 cases), and travel direction
-		// then traverse backwards to get max shove/hurl distance
-		// then proceed in proper direction to check that there is no blocking piece
-		int iStep=0, jStep=0;
-		BoardPoint curPos = new BoardPoint(startPos);
-		if (startPos.row ==endPos.row)
-			jStep = (startPos.col <endPos.col) ? 1 : -1;
-		else if (startPos.col ==endPos.col)
-			iStep = (startPos.row <endPos.row) ? 1 : -1;
-		else if (Math.abs((startPos.col -endPos.col)/(startPos.row -endPos.row)) == 1) {
-			iStep = (startPos.row <endPos.row) ? 1 : -1;
-			jStep = (startPos.col <endPos.col) ? 1 : -1;
-		}
-		else return false;
-
-		int numInLine = 0;
-		do {
-			curPos.row -= iStep;
-			curPos.col -= jStep;
-			numInLine++;
-		} while(BoardPoint.isOnBoard(curPos.row, curPos.col) && board.getAtPosition(curPos).equals(turn));
+	private boolean distanceAttackCheck(BoardStates turn, int startPos, int endPos) {
+		// figure out the line and travel direction, the pieces lined up behind startPos give the max
+		// shove/hurl distance, then check that there is no blocking piece on the way
+		int dir = BitBoard.direction(startPos, endPos);
+		if (dir < 0)
+			return false;
 
+		int numInLine = board.lineLength(turn, startPos, BitBoard.opposite(dir));
 		if ((numInLine == 1) && turn.equals(BoardStates.TROLL))
 			throw new IllegalArgumentException("Shove must be at least 2 trolls");
 
-		curPos = new BoardPoint(startPos);
-		for (int c = 0; c < numInLine; c++) {
-			curPos.row += iStep;
-			curPos.col += jStep;
-			if (curPos.equals(endPos))
-				return true;
-			if (!BoardPoint.isOnBoard(curPos.row, curPos.col) || !board.getAtPosition(curPos).equals(BoardStates.FREE))
-				return false;
-		}
-		return false;
+		int distance = Math.max(abs(BitBoard.row(endPos) - BitBoard.row(startPos)),
+		                        abs(BitBoard.col(endPos) - BitBoard.col(startPos)));
+		return distance <= numInLine && board.clearPathBetween(startPos, endPos);
 	}
 
 
@@ -347,143 +439,288 @@ public class Player {
 		}
 	}
 
+	// The PossiblePieceMoves forms are for callers wanting per piece lists (such as a gui highlighting moves),
+	// they are built from the packed moves of the generators below
 	public PossiblePieceMoves getPossibleTrollPieceMoves(PlayState turn, BoardPoint pos) {
-		ArrayList<BoardPoint> move = new ArrayList<>();
-		ArrayList<BoardPoint> shove = new ArrayList<>();
-
+		IntList moves = new IntList();
 		if (turn.isRemoveTurn()) {
-			String oldMove = moveLog.get(moveLog.size() - 1);
-			String[] oldOrder = oldMove.split(" ");
-			BoardPoint oldPos = new BoardPoint(oldOrder[2]);
-			if (!pos.equals(oldPos))
-				return new PossiblePieceMoves(pos,null, null, null, false);
-			else {
-				List<BoardPoint> positions = kingMovesMatching(pos, BoardStates.DWARF);
-				return new PossiblePieceMoves(pos, null, null, positions, mustRemove());
-			}
+			if (pos.getSquare() == Move.to(previousMove()))
+				addRemoves(moves, !mustRemove());
 		}
+		else {
+			addTrollMoves(pos.getSquare(), moves);
+		}
+		return toPieceMoves(pos, moves);
+	}
 
-		// movement
-		move.addAll(kingMoves(pos));
-
-		// shove
-		for (int i=-1; i<=1; i++) {
-			for (int j=-1; j <= 1; j++) {
-				if (i==0 && j==0)
-					continue;
-
-				BoardPoint temp = new BoardPoint(pos);
-				int numTrolls;
-				for (numTrolls=1; board.getAtPosition(temp).equals(BoardStates.TROLL); numTrolls++){
+	public PossiblePieceMoves getPossibleDwarfPieceMoves(PlayState turn, BoardPoint pos) {
+		IntList moves = new IntList();
+		addDwarfMoves(pos.getSquare(), moves);
+		return toPieceMoves(pos, moves);
+	}
 
-					temp.row -= i;
-					temp.col -= j;
-					if (!BoardPoint.isOnBoard(temp.row, temp.col))
-						break;
-				}
+	private PossiblePieceMoves toPieceMoves(BoardPoint pos, IntList moves) {
+		List<BoardPoint> move = new ArrayList<>();
+		List<BoardPoint> special = new ArrayList<>();
+		List<BoardPoint> remove = new ArrayList<>();
+		boolean mustRemove = true;
+
+		for (int i=0; i<moves.size(); i++) {
+			int m = moves.get(i);
+			switch (Move.command(m)) {
+				case Move.MOVE:
+					move.add(BoardPoint.at(Move.to(m)));
+					break;
+				case Move.HURL:
+				case Move.SHOVE:
+					special.add(BoardPoint.at(Move.to(m)));
+					break;
+				case Move.REMOVE:
+					if (Move.captures(m) == 0)
+						mustRemove = false;
+					for (int dir=0; dir<8; dir++) {
+						if ((Move.captures(m) & (1 << dir)) != 0)
+							remove.add(BoardPoint.at(BitBoard.step(Move.from(m), dir)));
+					}
+					break;
+			}
+		}
+		return new PossiblePieceMoves(pos, move, special, remove, !remove.isEmpty() && mustRemove);
+	}
 
-				if (numTrolls < 2)
+	// The generators below append packed moves to a caller supplied list and allocate nothing
+
+	// slides and hurls in one pass along each line: slide over free squares, and the first piece met
+	// can be hurled at if it is a troll no further away than the number of dwarfs lined up behind
+	private void addDwarfMoves(int square, IntList moves) {
+		for (int dir=0; dir<8; dir++) {
+			int[] ray = BitBoard.ray(square, dir);
+			for (int steps=0; steps<ray.length; steps++) {
+				int target = ray[steps];
+				if (board.isFree(target)) {
+					moves.add(Move.encode(Move.MOVE, square, target));
 					continue;
+				}
+				if (board.getAtSquare(target).equals(BoardStates.TROLL)
+						&& steps < board.lineLength(BoardStates.DWARF, square, BitBoard.opposite(dir)))
+					moves.add(Move.encode(Move.HURL, square, target));
+				break;
+			}
+		}
+	}
 
-				temp = new BoardPoint(pos);
-				if (!BoardPoint.isOnBoard(temp.row+2*i, temp.col+2*j))
-					continue;
+	// king moves, then shoves along each line: a line of n trolls (n >= 2) can shove its end troll up to n
+	// free squares forward, onto any of them that is next to a dwarf
+	private void addTrollMoves(int square, IntList moves) {
+		for (int dir=0; dir<8; dir++) {
+			int target = BitBoard.step(square, dir);
+			if (target >= 0 && board.isFree(target))
+				moves.add(Move.encode(Move.MOVE, square, target));
+		}
 
-				temp.row += i;
-				temp.col += j;
-				for (int steps=1; board.getAtPosition(temp).equals(BoardStates.FREE) && steps<numTrolls; steps++) {
-					if (steps>=2 && board.adjacentToAny(BoardStates.DWARF, temp))
-						shove.add(new BoardPoint(temp));
+		for (int dir=0; dir<8; dir++) {
+			int numTrolls = board.lineLength(BoardStates.TROLL, square, BitBoard.opposite(dir));
+			if (numTrolls < 2)
+				continue;
 
-					temp.row += i;
-					temp.col += j;
-					if (!BoardPoint.isOnBoard(temp.row,temp.col))
-						break;
-				}
+			int[] ray = BitBoard.ray(square, dir);
+			for (int steps=0; steps<numTrolls && steps<ray.length; steps++) {
+				if (!board.isFree(ray[steps]))
+					break;
+				if (board.adjacentToAny(BoardStates.DWARF, ray[steps]))
+					moves.add(Move.encode(Move.SHOVE, square, ray[steps]));
 			}
 		}
+	}
+
+	// remove turn: the troll that just moved may take every adjacent dwarf, all or nothing to keep the
+	// number of options small (zero, one, or all options)
+	private void addRemoves(IntList moves, boolean allowNone) {
+		int anchor = Move.to(previousMove());
+		int captures = 0;
+		for (int dir=0; dir<8; dir++) {
+			int pos = BitBoard.step(anchor, dir);
+			if (pos >= 0 && board.getAtSquare(pos).equals(BoardStates.DWARF))
+				captures |= 1 << dir;
+		}
 
-		return new PossiblePieceMoves(pos, move, shove, null, false);
+		moves.add(Move.encodeRemove(anchor, captures));
+		if (allowNone && captures != 0)
+			moves.add(Move.encodeRemove(anchor, 0));
 	}
 
-	public PossiblePieceMoves getPossibleDwarfPieceMoves(PlayState turn, BoardPoint pos) {
-		ArrayList<BoardPoint> move = new ArrayList<>();
-		ArrayList<BoardPoint> hurl = new ArrayList<>();
+	public List<String> getPossibleMoves(PlayState turn) {
+		IntList moves = new IntList();
+		getPossibleMoves(turn, moves);
 
-		// movement
-		for (int i=-1; i<=1; i++) {
-			for (int j=-1; j <= 1; j++) {
-				if (i==0 && j==0)
-					continue;
+		List<String> encodedMoves = new ArrayList<>(moves.size());
+		for (int i=0; i<moves.size(); i++)
+			encodedMoves.add(Move.toString(moves.get(i)));
+		return encodedMoves;
+	}
 
-				BoardPoint temp = new BoardPoint(pos);
-				temp.row += i;
-				temp.col += j;
-				if (!BoardPoint.isOnBoard(temp.row,temp.col))
-					continue;
+	// fills moves (which is cleared first) with every legal move for the side to play in packed form,
+	// reusing the same list between calls makes generation garbage free
+	public void getPossibleMoves(PlayState turn, IntList moves) {
+		moves.clear();
 
-				while (board.getAtPosition(temp).equals(BoardStates.FREE)) {
-					move.add(new BoardPoint(temp));
-					temp.row += i;
-					temp.col += j;
-					if (!BoardPoint.isOnBoard(temp.row,temp.col))
-						break;
-				}
-			}
+		if (turn.isRemoveTurn()) {
+			// the ai always takes every dwarf it can
+			addRemoves(moves, false);
+			return;
+		}
+
+		if (turn.isTurn(BoardStates.DWARF)) {
+			PieceList dwarfs = board.getDwarfList();
+			for (int i=0; i<dwarfs.size(); i++)
+				addDwarfMoves(dwarfs.get(i), moves);
+		}
+		else {
+			PieceList trolls = board.getTrollList();
+			for (int i=0; i<trolls.size(); i++)
+				addTrollMoves(trolls.get(i), moves);
 		}
+	}
 
-		// hurl
-		for (BoardPoint trollPos : board.getTrolls()) {
-			if (distanceAttackCheck(BoardStates.DWARF, pos, trollPos))
-				hurl.add(trollPos);
+	// moves of a single piece in packed form, appended to moves
+	public void getPossiblePieceMoves(PlayState turn, int square, IntList moves) {
+		if (turn.isRemoveTurn()) {
+			if (square == Move.to(previousMove()))
+				addRemoves(moves, !mustRemove());
+			return;
 		}
 
-		return new PossiblePieceMoves(pos, move, hurl, null, false);
+		switch (board.getAtSquare(square)) {
+			case DWARF:
+				addDwarfMoves(square, moves);
+				break;
+			case TROLL:
+				addTrollMoves(square, moves);
+				break;
+		}
 	}
 
-	private ArrayList<BoardPoint> kingMoves(BoardPoint pos) {
-		return kingMovesMatching(pos, BoardStates.FREE);
+	// number of moves the piece on square has in getPossibleMoves, the same count addDwarfMoves/addTrollMoves would
+	// produce, on a remove turn the anchor troll's single capture (not getPossiblePieceMoves' choice of taking none)
+	public int countPieceMoves(PlayState turn, int square) {
+		if (turn.isRemoveTurn()) {
+			if (square != Move.to(previousMove()))
+				return 0;
+			pieceMoves.clear();
+			addRemoves(pieceMoves, false);
+			return pieceMoves.size();
+		}
+
+		switch (board.getAtSquare(square)) {
+			case DWARF:
+				return countDwarfMoves(square);
+			case TROLL:
+				return countTrollMoves(square);
+			default:
+				return 0;
+		}
+	}
+
+	private int countDwarfMoves(int square) {
+		int count = 0;
+		for (int dir=0; dir<8; dir++) {
+			int[] ray = BitBoard.ray(square, dir);
+			int steps = 0;
+			while (steps < ray.length && board.isFree(ray[steps]))
+				steps++;
+			count += steps;
+			if (steps < ray.length && board.getAtSquare(ray[steps]).equals(BoardStates.TROLL)
+					&& steps < board.lineLength(BoardStates.DWARF, square, BitBoard.opposite(dir)))
+				count++;
+		}
+		return count;
 	}
-	private ArrayList<BoardPoint> kingMovesMatching(BoardPoint pos, BoardStates match) {
-		ArrayList<BoardPoint> points = new ArrayList<>();
-		for (int i = -1; i <= 1; i++) {
-			for (int j = -1; j <= 1; j++) {
-				// ignore pos
-				if (i == 0 && j == 0)
-					continue;
-				// don't allow pos[0]+i out of bounds
-				if ((pos.row + i < 0) || (pos.row + i > 14))
-					continue;
-				// don't allow pos[1]+j out of bounds
-				if ((pos.col + j < 0) || (pos.col + j > 14))
-					continue;
 
-				BoardPoint testPos = new BoardPoint(pos.row + i, pos.col + j);
+	private int countTrollMoves(int square) {
+		int count = 0;
+		for (int dir=0; dir<8; dir++) {
+			int target = BitBoard.step(square, dir);
+			if (target >= 0 && board.isFree(target))
+				count++;
 
-				if (board.getAtPosition(testPos).equals(match))
-					points.add(testPos);
+			int numTrolls = board.lineLength(BoardStates.TROLL, square, BitBoard.opposite(dir));
+			if (numTrolls < 2)
+				continue;
+			int[] ray = BitBoard.ray(square, dir);
+			for (int steps=0; steps<numTrolls && steps<ray.length && board.isFree(ray[steps]); steps++) {
+				if (board.adjacentToAny(BoardStates.DWARF, ray[steps]))
+					count++;
 			}
 		}
-		return points;
+		return count;
 	}
 
-	public List<String> getPossibleMoves(PlayState turn) {
-		PossibleMoves allMoves = new PossibleMoves(turn);
+	// total number of moves getPossibleMoves would produce, without building them
+	public int countPossibleMoves(PlayState turn) {
+		if (turn.isRemoveTurn()) {
+			pieceMoves.clear();
+			addRemoves(pieceMoves, false);
+			return pieceMoves.size();
+		}
 
+		PieceList pieces = turn.isTurn(BoardStates.DWARF) ? board.getDwarfList() : board.getTrollList();
+		int total = 0;
+		for (int i=0; i<pieces.size(); i++)
+			total += countPieceMoves(turn, pieces.get(i));
+		return total;
+	}
+
+	// a uniformly random move among those getPossibleMoves would produce, or Move.NONE if there are none
+	// only the moves of the chosen piece are generated, the others are just counted
+	public int randomMove(PlayState turn, Random rand) {
+		pieceMoves.clear();
 		if (turn.isRemoveTurn()) {
-			String oldMove = moveLog.get(moveLog.size()-1);
-			String[] oldOrder = oldMove.split(" ");
-			BoardPoint oldPos = new BoardPoint(oldOrder[2]);
-			List<BoardPoint> positions = kingMovesMatching(oldPos, BoardStates.DWARF);
-			PossiblePieceMoves removes = new PossiblePieceMoves(oldPos, null, null, positions, true);
-			allMoves.addPieceMoves(removes);
-			return allMoves.getEncodedMoves();
+			addRemoves(pieceMoves, false);
+			return pieceMoves.get(rand.nextInt(pieceMoves.size()));
+		}
+
+		PieceList pieces = turn.isTurn(BoardStates.DWARF) ? board.getDwarfList() : board.getTrollList();
+		int total = 0;
+		for (int i=0; i<pieces.size(); i++) {
+			pieceMoveCounts[i] = countPieceMoves(turn, pieces.get(i));
+			total += pieceMoveCounts[i];
 		}
+		if (total == 0)
+			return Move.NONE;
 
-		List<BoardPoint> pieces = (turn.isTurn(BoardStates.DWARF)) ? board.getDwarfs() : board.getTrolls();
-		for (BoardPoint piece : pieces) {
-			allMoves.addPieceMoves(getPossiblePieceMoves(turn, piece));
+		int index = rand.nextInt(total);
+		int piece = 0;
+		while (index >= pieceMoveCounts[piece])
+			index -= pieceMoveCounts[piece++];
+
+		getPossiblePieceMoves(turn, pieces.get(piece), pieceMoves);
+		return pieceMoves.get(index);
+	}
+
+	// A cheap guess at how good a legal move is in the current position, higher is better, for trying moves
+	// in a sensible order.  Only counts the material it takes or sets up to take, a dwarf move is scored by
+	// the dwarfs it lands next to (dwarfs in lines are safer and can hurl further) which is less than any capture.
+	public int movePrior(int move) {
+		int from = Move.from(move);
+		int to = Move.to(move);
+		switch (Move.command(move)) {
+			case Move.HURL:
+				return TROLL_POINTS;
+			case Move.SHOVE:
+				// every dwarf next to the landing square can be taken on the remove turn that follows
+				return board.countAdjacent(BoardStates.DWARF, to) * DWARF_POINTS;
+			case Move.REMOVE:
+				return Integer.bitCount(Move.captures(move)) * DWARF_POINTS;
+			default:
+				if (board.getAtSquare(from) == BoardStates.TROLL)
+					return board.countAdjacent(BoardStates.DWARF, to) * DWARF_POINTS;
+
+				// don't count the moving dwarf as its own neighbour
+				int neighbours = board.countAdjacent(BoardStates.DWARF, to);
+				int dir = BitBoard.direction(from, to);
+				if (dir >= 0 && BitBoard.step(from, dir) == to)
+					neighbours--;
+				return neighbours;
 		}
-		return allMoves.getEncodedMoves();
 	}
 }
@@ -0,0 +1,84 @@
+package thud;
+
+import java.util.Random;
+
+/**
+ * The simulation step of MonteCarloPlay: plays random moves from the current position of a Player and reports
+ * the piece counts calculateScores would score, then takes every move back.
+ *
+ * Moves come from a PlayoutPolicy (uniformly random by default) and are legal by construction, so they are
+ * applied with playTrusted, skipping the rule checks, text handling and move log of Player.play.  Those stay on
+ * the human path.
+ */
+final class PlayoutEngine {
+	// flags a recorded move as played by the trolls, see run
+	static final int TROLL_MOVE = 1 << 30;
+
+	private final Player player;
+	private final PlayState playState;
+	private PlayoutPolicy policy = new UniformPlayoutPolicy();
+	private int dwarfs;
+	private int trolls;
+
+	PlayoutEngine(Player player, PlayState playState) {
+		this.player = player;
+		this.playState = playState;
+	}
+
+	void setPolicy(PlayoutPolicy policy) {
+		this.policy = policy;
+	}
+
+	// plays at most maxMoves moves chosen by the policy, stopping early once a side is nearly wiped out,
+	// records the final piece counts and restores the position
+	void run(Random rand, int maxMoves) {
+		run(rand, maxMoves, null);
+	}
+
+	// as run above, also appending each move played to line, or'ed with TROLL_MOVE for the trolls' moves
+	void run(Random rand, int maxMoves, IntList line) {
+		Board board = player.getBoard();
+		int plies = 0;
+		for (int i = 0; i < maxMoves; i++) {
+			int move = policy.selectMove(player, playState, rand);
+			if (move == Move.NONE)
+				break;
+			if (line != null)
+				line.add(playState.isTurn(BoardStates.TROLL) ? move | TROLL_MOVE : move);
+			player.playTrusted(playState, move);
+			plies++;
+
+			if (playState.isTurn(BoardStates.DWARF)) {
+				if (board.getNumDwarfs() < 2)
+					break;
+			} else {
+				if (board.getNumTrolls() < 3)
+					break;
+			}
+		}
+
+		dwarfs = board.getNumDwarfs();
+		trolls = board.getNumTrolls();
+
+		for (int i = 0; i < plies; i++)
+			player.undo(playState);
+	}
+
+	int getDwarfs() {
+		return dwarfs;
+	}
+
+	int getTrolls() {
+		return trolls;
+	}
+
+	// +1 if side would win a round ending in the last playout's position, -1 otherwise (draws count as losses)
+	int result(BoardStates side) {
+		int dwarfScore = dwarfs * Player.DWARF_POINTS;
+		int trollScore = trolls * Player.TROLL_POINTS;
+		if (side == BoardStates.DWARF)
+			return (dwarfScore > trollScore) ? 1 : -1;
+		else
+			return (dwarfScore < trollScore) ? 1 : -1;
+	}
+}
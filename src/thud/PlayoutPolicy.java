@@ -0,0 +1,29 @@
+package thud;
+
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Chooses the moves of a PlayoutEngine simulation.
+ *
+ * Policies may keep scratch buffers so they don't allocate per move, so each PlayoutEngine (each search thread)
+ * needs its own instance, which is why MonteCarloPlay.setPlayoutPolicy takes a Supplier.
+ */
+public interface PlayoutPolicy {
+	// a legal move for the side to move, or Move.NONE if there are none
+	int selectMove(Player player, PlayState turn, Random rand);
+
+	// "uniform", "capture" or "weighted", for choosing a policy from a setting or command line
+	static Supplier<PlayoutPolicy> named(String name) {
+		switch (name) {
+			case "uniform":
+				return UniformPlayoutPolicy::new;
+			case "capture":
+				return CaptureFirstPlayoutPolicy::new;
+			case "weighted":
+				return WeightedPlayoutPolicy::new;
+			default:
+				throw new IllegalArgumentException("Unknown playout policy: " + name);
+		}
+	}
+}
@@ -8,12 +8,10 @@ import java.util.List;
  *
  * not public, use externally but do not make/instantiate, as this is quick-and-dirty (but not over-engineered)
  *
- * A helper data class for the possibleMoves class and (transitively) the MonteCarloPlay ai class,
+ * A helper data class for Player.getPossiblePieceMoves, for callers wanting one piece's moves by type (such as a gui),
  * this merely stores a starting position and lists of endpoints separated by move type.
  *
- * PossibleMoves takes this input and uses the move type separation, startpoint, and endPoint to generate a flat list
- * of strings storing all possible moves for this piece (minus a few remove variations).  This is then aggregated with
- * the possiblePieceMoves for all the current player's other pieces into one massive list.
+ * The ai doesn't use it, it works on the packed moves of Player.getPossibleMoves.
  *
  * It is incredibly quick and dirty and is here to simplify code so that only a small number of
  * arguments are passed to aforementioned classes.
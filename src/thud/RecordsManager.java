@@ -22,17 +22,19 @@ import java.util.*;
  * When loading a file this class assumes a valid save file and performs no checking and throws no special exceptions.
  * Only unchecked exceptions may be thrown.  If only generated save files are used then this is reliable.
  *
+ * Logs are held as packed moves (see Move), text is only parsed in loadFile and formatted in saveFile.
+ *
  * resumeRound is set to true when loading a file and finds the round is still in progress,
  * the method call should be though of as a question.
  * It must be explicitly set to false via the setter setResumeRound as playing a move is performed by the player class.
  * Besides another application (say a log viewer/editor) may not want to set it to false.
  */
 public class RecordsManager {
-	List<List<String>> moveLogs = new ArrayList<>();
+	List<IntList> moveLogs = new ArrayList<>();
 	boolean resumeRound = false;
 	int currentRound = 0;
 
-	public List<List<String>> getMoveLogs() {
+	public List<IntList> getMoveLogs() {
 		return moveLogs;
 	}
 
@@ -58,34 +60,35 @@ public class RecordsManager {
 		try (BufferedWriter out = new BufferedWriter(new FileWriter(fileName))) {
 			if (currentRound < 1)
 				return;
-			for (String move : moveLogs.get(0)) {
-				out.write(move);
-				out.newLine();
-			}
+			writeLog(out, moveLogs.get(0));
 			if (currentRound < 2)
 				return;
 			out.newLine();
-			for (String move : moveLogs.get(1)) {
-				out.write(move);
-				out.newLine();
-			}
+			writeLog(out, moveLogs.get(1));
 			if (currentRound < 3)
 				return;
 			out.newLine();
 		}
 	}
 
+	private void writeLog(BufferedWriter out, IntList moveLog) throws IOException {
+		for (int i=0; i<moveLog.size(); i++) {
+			out.write(Move.toString(moveLog.get(i)));
+			out.newLine();
+		}
+	}
+
 	public void loadFile(String fileName) throws IOException {
 		// initialize or clear moveLogs
 		moveLogs = new ArrayList<>();
 
-		List<String> roundMoveLog;
+		IntList roundMoveLog;
 
 		boolean hitMidBlank = false;
 		boolean hitEndBlank = false;
 		try (Scanner input = new Scanner(new FileReader(fileName))) {
 
-			roundMoveLog = new ArrayList<>();
+			roundMoveLog = new IntList();
 			currentRound = 0;
 
 			while (input.hasNextLine()) {
@@ -104,12 +107,14 @@ public class RecordsManager {
 					if (!hitMidBlank) {
 						hitMidBlank = true;
 						moveLogs.add(roundMoveLog);
-						roundMoveLog = new ArrayList<>();
+						roundMoveLog = new IntList();
 					} else {
 						hitEndBlank = true;
 					}
 				} else {
-					roundMoveLog.add(currentLine);
+					// removes refer to the previous move of the same round for their anchor
+					int previousMove = roundMoveLog.isEmpty() ? Move.NONE : roundMoveLog.last();
+					roundMoveLog.add(Move.parse(currentLine, previousMove));
 				}
 			}
 
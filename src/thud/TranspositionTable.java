@@ -0,0 +1,75 @@
+package thud;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed size table of search statistics keyed by position (see Player.getPositionKey), shared by every
+ * MonteCarloNode that reaches the same position through a different move order.
+ *
+ * Each slot is two longs: the full position key and the statistics packed as visits*2^32 + wins, so a result
+ * is added with a single atomic add.  Lookups and updates are lock free; a slot is simply taken over when
+ * a different position hashes to it, which can lose or misattribute a few results under contention,
+ * acceptable for statistics that are only used to guide the search.
+ */
+final class TranspositionTable {
+	static final int DEFAULT_SIZE_LOG2 = 18;
+
+	private final AtomicLongArray slots;
+	private final int mask;
+
+	TranspositionTable() {
+		this(DEFAULT_SIZE_LOG2);
+	}
+
+	TranspositionTable(int sizeLog2) {
+		slots = new AtomicLongArray(2 << sizeLog2);
+		mask = (1 << sizeLog2) - 1;
+	}
+
+	private int index(long key) {
+		// the low bits of the key are as random as any others, but mix in the high half for short tables
+		return ((int) (key ^ (key >>> 32)) & mask) << 1;
+	}
+
+	// records one result for the position, winsInc is +1 for a win and -1 for a loss
+	void add(long key, int winsInc) {
+		add(key, 1, winsInc);
+	}
+
+	// records several results for the position at once, winsInc is their sum
+	void add(long key, int visits, int winsInc) {
+		int i = index(key);
+		long stored = slots.get(i);
+		if (stored != key) {
+			if (!slots.compareAndSet(i, stored, key)) {
+				// someone else replaced the slot first, only add if they claimed it for this position
+				if (slots.get(i) != key)
+					return;
+			}
+			else {
+				slots.set(i + 1, 0);
+			}
+		}
+		slots.addAndGet(i + 1, ((long) visits << 32) + winsInc);
+	}
+
+	// packed statistics for the position, 0 (no visits) if it is not in the table
+	long get(long key) {
+		int i = index(key);
+		long stats = slots.get(i + 1);
+		return (slots.get(i) == key) ? stats : 0;
+	}
+
+	static int visits(long stats) {
+		return (int) ((stats - wins(stats)) >>> 32);
+	}
+
+	static int wins(long stats) {
+		return (int) stats;
+	}
+
+	void clear() {
+		for (int i = 0; i < slots.length(); i++)
+			slots.set(i, 0);
+	}
+}
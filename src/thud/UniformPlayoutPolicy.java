@@ -0,0 +1,13 @@
+package thud;
+
+import java.util.Random;
+
+/**
+ * Every legal move equally likely, see Player.randomMove.  Fastest per move, but captures are rare in its playouts.
+ */
+public final class UniformPlayoutPolicy implements PlayoutPolicy {
+	@Override
+	public int selectMove(Player player, PlayState turn, Random rand) {
+		return player.randomMove(turn, rand);
+	}
+}
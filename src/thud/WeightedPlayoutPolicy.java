@@ -0,0 +1,38 @@
+package thud;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Samples moves with probability proportional to 1 + Player.movePrior, so captures are far more likely than
+ * quiet moves and dwarfs favour staying in lines, while every legal move keeps some chance.
+ *
+ * The move list and weight buffers are reused, so sampling doesn't allocate once they have grown.
+ */
+public final class WeightedPlayoutPolicy implements PlayoutPolicy {
+	private final IntList moves = new IntList(256);
+	// running totals of the weights, so a sample is a binary search
+	private int[] cumulative = new int[256];
+
+	@Override
+	public int selectMove(Player player, PlayState turn, Random rand) {
+		player.getPossibleMoves(turn, moves);
+		int count = moves.size();
+		if (count == 0)
+			return Move.NONE;
+		if (cumulative.length < count)
+			cumulative = new int[Math.max(count, cumulative.length * 2)];
+
+		int total = 0;
+		for (int i = 0; i < count; i++) {
+			total += 1 + Math.max(player.movePrior(moves.get(i)), 0);
+			cumulative[i] = total;
+		}
+
+		// first index whose running total is above the sample
+		int index = Arrays.binarySearch(cumulative, 0, count, rand.nextInt(total) + 1);
+		if (index < 0)
+			index = -index - 1;
+		return moves.get(index);
+	}
+}
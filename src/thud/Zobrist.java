@@ -0,0 +1,55 @@
+package thud;
+
+import java.util.Random;
+
+/**
+ * Random 64 bit keys for Zobrist hashing of positions.
+ *
+ * A position key is the xor of the keys of every piece on its square, plus the side to move and remove turn keys.
+ * Board and PlayState keep their part up to date as pieces move, so a key never has to be computed from scratch.
+ * The generator is seeded with a constant so keys are the same on every run (and can be stored on disk).
+ */
+final class Zobrist {
+	static final long[] DWARF = new long[BitBoard.SQUARES];
+	static final long[] TROLL = new long[BitBoard.SQUARES];
+	static final long[] STONE = new long[BitBoard.SQUARES];
+	// the troll allowed to capture on a remove turn, and whether it must
+	static final long[] REMOVE_ANCHOR = new long[BitBoard.SQUARES];
+	static final long MUST_REMOVE;
+	static final long TROLL_TURN;
+	static final long REMOVE_TURN;
+
+	static {
+		Random rand = new Random(0x7468756424L);
+		for (int sq = 0; sq < BitBoard.SQUARES; sq++) {
+			DWARF[sq] = rand.nextLong();
+			TROLL[sq] = rand.nextLong();
+			STONE[sq] = rand.nextLong();
+			REMOVE_ANCHOR[sq] = rand.nextLong();
+		}
+		MUST_REMOVE = rand.nextLong();
+		TROLL_TURN = rand.nextLong();
+		REMOVE_TURN = rand.nextLong();
+	}
+
+	private Zobrist() {
+	}
+
+	// key of a piece on a square, 0 for FREE and FORBIDDEN which are not hashed
+	static long pieceKey(BoardStates state, int square) {
+		switch (state) {
+			case DWARF:
+				return DWARF[square];
+			case TROLL:
+				return TROLL[square];
+			case STONE:
+				return STONE[square];
+			default:
+				return 0;
+		}
+	}
+
+	static long turnKey(BoardStates turn, boolean removeTurn) {
+		return ((turn == BoardStates.TROLL) ? TROLL_TURN : 0) ^ (removeTurn ? REMOVE_TURN : 0);
+	}
+}
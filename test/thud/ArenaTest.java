@@ -0,0 +1,59 @@
+package thud;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Elo estimates and confidence intervals of Arena.Result, against values worked out by hand.
+ */
+class ArenaTest {
+	private static final double DELTA = 1e-6;
+
+	@org.junit.jupiter.api.Test
+	void evenScoreIsZeroElo() {
+		Arena.Result result = new Arena.Result(10, 0, 10, 1);
+		assertEquals(0.5, result.score(), DELTA);
+		assertEquals(0, result.elo(), DELTA);
+		// standard error sqrt(0.25 / 20), so the score ranges 0.5 +- 0.2191
+		assertEquals(163.324830, result.eloHigh(1.96), DELTA);
+		assertEquals(-163.324830, result.eloLow(1.96), DELTA);
+
+		// draws only: the same score without any spread
+		Arena.Result draws = new Arena.Result(0, 8, 0, 1);
+		assertEquals(0, draws.elo(), DELTA);
+		assertEquals(0, draws.eloLow(1.96), DELTA);
+		assertEquals(0, draws.eloHigh(1.96), DELTA);
+	}
+
+	@org.junit.jupiter.api.Test
+	void knownScores() {
+		// 3 to 1 is 400 * log10(3)
+		assertEquals(190.848502, new Arena.Result(3, 0, 1, 1).elo(), DELTA);
+		assertEquals(-190.848502, new Arena.Result(1, 0, 3, 1).elo(), DELTA);
+
+		// a draw counts half: 6 wins, 2 draws and 2 losses score 0.7
+		Arena.Result result = new Arena.Result(6, 2, 2, 1);
+		assertEquals(0.7, result.score(), DELTA);
+		assertEquals(147.190714, result.elo(), DELTA);
+		assertEquals(-33.402545, result.eloLow(1.96), DELTA);
+		assertEquals(504.049323, result.eloHigh(1.96), DELTA);
+	}
+
+	// a clean sweep has no finite estimate, and an interval reaching past 0 or 1 is open on that side
+	@org.junit.jupiter.api.Test
+	void sweepsAreInfinite() {
+		Arena.Result wins = new Arena.Result(5, 0, 0, 1);
+		assertEquals(Double.POSITIVE_INFINITY, wins.elo());
+		assertEquals(Double.POSITIVE_INFINITY, wins.eloHigh(1.96));
+
+		Arena.Result losses = new Arena.Result(0, 0, 5, 1);
+		assertEquals(Double.NEGATIVE_INFINITY, losses.elo());
+		assertEquals(Double.NEGATIVE_INFINITY, losses.eloLow(1.96));
+
+		Arena.Result nearSweep = new Arena.Result(1, 0, 0, 1);
+		assertEquals(Double.POSITIVE_INFINITY, nearSweep.eloHigh(1.96));
+		Arena.Result close = new Arena.Result(4, 0, 1, 1);
+		assertEquals(Double.POSITIVE_INFINITY, close.eloHigh(1.96));
+		assertTrue(close.eloLow(1.96) < close.elo());
+	}
+}
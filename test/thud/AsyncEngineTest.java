@@ -0,0 +1,87 @@
+package thud;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * AsyncEngine's futures must complete whatever the engine behind does.
+ */
+class AsyncEngineTest {
+
+	// always answers with move, and fails on every opponent move
+	private static final class StubEngine implements Engine {
+		private final int move;
+		int advanced = 0;
+
+		StubEngine(int move) {
+			this.move = move;
+		}
+
+		@Override
+		public void opponentPlay(int move) {
+			throw new IllegalArgumentException("Not a legal move");
+		}
+
+		@Override
+		public int selectPlay() {
+			return move;
+		}
+
+		@Override
+		public int bestPlay(BooleanSupplier stop) {
+			return move;
+		}
+
+		@Override
+		public void advance(int move) {
+			advanced++;
+		}
+	}
+
+	@org.junit.jupiter.api.Test
+	void noMoveCompletesWithNull() throws Exception {
+		StubEngine engine = new StubEngine(Move.NONE);
+		AsyncEngine ai = new AsyncEngine(engine, 0);
+		try {
+			assertNull(ai.selectPlay().get(10, TimeUnit.SECONDS));
+			assertEquals(0, engine.advanced);
+		} finally {
+			ai.shutdown();
+		}
+	}
+
+	@org.junit.jupiter.api.Test
+	void moveIsPlayedAndReturned() throws Exception {
+		int move = Move.encode(Move.MOVE, BitBoard.square(6, 0), BitBoard.square(6, 4));
+		StubEngine engine = new StubEngine(move);
+		AsyncEngine ai = new AsyncEngine(engine, 0);
+		try {
+			assertEquals("M A7 E7", ai.selectPlay().get(10, TimeUnit.SECONDS));
+			// advance runs on the control thread just after the future completes, so it has certainly run once the
+			// next call queued behind it is done
+			ai.selectPlay().get(10, TimeUnit.SECONDS);
+			assertTrue(engine.advanced >= 1);
+		} finally {
+			ai.shutdown();
+		}
+	}
+
+	@org.junit.jupiter.api.Test
+	void opponentPlayFailureReachesCaller() {
+		AsyncEngine ai = new AsyncEngine(new StubEngine(Move.NONE), 0);
+		try {
+			CompletableFuture<Void> done = ai.opponentPlay(0);
+			ExecutionException ex = assertThrows(ExecutionException.class, () -> done.get(10, TimeUnit.SECONDS));
+			assertTrue(ex.getCause() instanceof IllegalArgumentException);
+		} finally {
+			ai.shutdown();
+		}
+	}
+}
@@ -1,7 +1,9 @@
 package thud;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 
 import static org.junit.jupiter.api.Assertions.fail;
 
@@ -125,4 +127,123 @@ class BoardTest {
 	System.out.println(board.toString());
 
 	}
-}
\ No newline at end of file
+
+	// plays the errorFreeReplay game forward then takes every move back, board must match a fresh game
+	@org.junit.jupiter.api.Test
+	void undoRestoresStart() {
+
+		List<String> moves = Arrays.asList(
+				"M A7 E7", "M G7 F7", "R",
+				"H E7 F7", "S H7 G7", "R F7",
+				"M B11 D11", "M H9 I10", "M A6 E10",
+				"M G8 H7", "M K14 J14", "M G9 H10",
+				"H E10 H7", "S I10 I13"
+		);
+
+		Board board = new Board();
+		Player player = new Player(board);
+		PlayState turn = player.replayMoveLog(moves);
+
+		for (int i=0; i<moves.size(); i++)
+			player.undo(turn);
+
+		Board startBoard = new Board();
+		PlayState startTurn = new Player(startBoard).initializeGame();
+		if (!board.toString().equals(startBoard.toString()))
+			fail("Board differs after undo:\n" + board.toString());
+		if (turn.getTurn() != startTurn.getTurn() || turn.isRemoveTurn() != startTurn.isRemoveTurn())
+			fail("Turn differs after undo");
+		if (board.getNumDwarfs() != startBoard.getNumDwarfs() || board.getNumTrolls() != startBoard.getNumTrolls())
+			fail("Piece counts differ after undo");
+		if (player.getMoveLog().size() != 0)
+			fail("Move log not emptied by undo");
+	}
+
+	// plays random games with captures, taking plays back now and then: after every undo both piece lists must be
+	// in exactly the slot order they had before the play, and always hold the squares of the board's pieces
+	@org.junit.jupiter.api.Test
+	void undoRestoresPieceListOrder() {
+		Random rand = new Random(7);
+		for (int game=0; game<20; game++) {
+			RandomGame random = new RandomGame(rand, 3);
+			Board board = random.board();
+			List<int[][]> orders = new ArrayList<>();
+
+			for (int ply=0; ply<200; ply++) {
+				int[][] order = { slots(board.getDwarfList()), slots(board.getTrollList()) };
+				if (!random.step())
+					break;
+				if (random.undid()) {
+					int[][] before = orders.remove(orders.size() - 1);
+					if (!Arrays.equals(before[0], slots(board.getDwarfList()))
+							|| !Arrays.equals(before[1], slots(board.getTrollList())))
+						fail("Piece list order differs after undo in game " + game + " ply " + ply);
+				}
+				else {
+					orders.add(order);
+				}
+				checkPieceList(board, board.getDwarfList(), BoardStates.DWARF);
+				checkPieceList(board, board.getTrollList(), BoardStates.TROLL);
+			}
+		}
+	}
+
+	private static int[] slots(PieceList pieces) {
+		int[] squares = new int[pieces.size()];
+		for (int i=0; i<squares.length; i++)
+			squares[i] = pieces.get(i);
+		return squares;
+	}
+
+	// the list holds every square of side's pieces once, and nothing else
+	private static void checkPieceList(Board board, PieceList pieces, BoardStates side) {
+		boolean[] listed = new boolean[BitBoard.SQUARES];
+		for (int i=0; i<pieces.size(); i++) {
+			int square = pieces.get(i);
+			if (listed[square] || board.getAtSquare(square) != side)
+				fail("Piece list holds " + Move.squareName(square) + " wrongly");
+			listed[square] = true;
+		}
+		for (int square=0; square<BitBoard.SQUARES; square++) {
+			if (!listed[square] && board.getAtSquare(square) == side)
+				fail("Piece list misses " + Move.squareName(square));
+		}
+	}
+
+	// random games with occasional undos: the neighbour counts and line runs Board keeps up to date must match a
+	// recount from the squares after every play and undo
+	@org.junit.jupiter.api.Test
+	void neighbourhoodMatchesRecount() {
+		Random rand = new Random(8);
+		for (int game=0; game<10; game++) {
+			RandomGame random = new RandomGame(rand, 4);
+			checkNeighbourhood(random.board());
+			for (int ply=0; ply<200 && random.step(); ply++)
+				checkNeighbourhood(random.board());
+		}
+	}
+
+	private static void checkNeighbourhood(Board board) {
+		for (BoardStates side : new BoardStates[] { BoardStates.DWARF, BoardStates.TROLL }) {
+			for (int square=0; square<BitBoard.SQUARES; square++) {
+				int adjacent = 0;
+				for (int dir=0; dir<8; dir++) {
+					int next = BitBoard.step(square, dir);
+					if (next >= 0 && board.getAtSquare(next) == side)
+						adjacent++;
+
+					int run = 0;
+					for (int pos = square; pos >= 0 && board.getAtSquare(pos) == side; pos = BitBoard.step(pos, dir))
+						run++;
+					if (board.lineLength(side, square, dir) != run)
+						fail(side + " run from " + Move.squareName(square) + " in direction " + dir + " is "
+								+ board.lineLength(side, square, dir) + ", recount " + run + "\n" + board);
+				}
+				if (board.countAdjacent(side, square) != adjacent
+						|| board.adjacentToAny(side, square) != (adjacent > 0))
+					fail(side + " neighbours of " + Move.squareName(square) + " are " + board.countAdjacent(side, square)
+							+ ", recount " + adjacent + "\n" + board);
+			}
+		}
+	}
+}
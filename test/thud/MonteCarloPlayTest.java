@@ -0,0 +1,47 @@
+package thud;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Merging of the root parallel trees' statistics.
+ */
+class MonteCarloPlayTest {
+
+	// every root move tried by any tree is counted, with the visits and wins of all trees that tried it
+	@org.junit.jupiter.api.Test
+	void rootStatsMergeEveryTreesMoves() {
+		MonteCarloPlay ai = new MonteCarloPlay(BoardStates.DWARF, 4, false, 100000);
+		try {
+			ai.ponder(4000, () -> false);
+
+			Map<Integer, long[]> expected = new HashMap<>();
+			int largestTree = 0;
+			for (MonteCarloPlay.SearchTree tree : ai.trees) {
+				NodeArena arena = tree.arena;
+				largestTree = Math.max(largestTree, arena.childCount(tree.root));
+				for (int child = arena.firstChild(tree.root); child != NodeArena.NONE; child = arena.sibling(child)) {
+					long[] sums = expected.computeIfAbsent(arena.move(child), move -> new long[2]);
+					sums[0] += TranspositionTable.visits(arena.stats(child));
+					sums[1] += TranspositionTable.wins(arena.stats(child));
+				}
+			}
+			// with progressive widening the trees try different root moves, so no one tree has them all
+			assertTrue(expected.size() > largestTree, "trees expanded the same root moves");
+
+			MonteCarloPlay.RootStats stats = ai.new RootStats();
+			assertEquals(expected.size(), stats.size);
+			for (int i = 0; i < stats.size; i++) {
+				long[] sums = expected.get(stats.moves[i]);
+				assertEquals(sums[0], stats.visits[i], "visits of " + Move.toString(stats.moves[i]));
+				assertEquals(sums[1], stats.wins[i], "wins of " + Move.toString(stats.moves[i]));
+				assertEquals(BoardStates.TROLL, stats.turns[i]);
+			}
+		} finally {
+			ai.shutdown();
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package thud;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Checks Player.getPossibleMoves against the rule checks of Player.play on positions from random games: every
+ * generated move must be accepted, every move play accepts must be generated, and undo must restore the position.
+ * Player.randomMove must then pick among the generated moves uniformly.
+ */
+class MoveGenerationTest {
+
+	@org.junit.jupiter.api.Test
+	void generatorMatchesPlayOracle() {
+		Random rand = new Random(5);
+		int positions = 0, removeTurns = 0;
+		for (int game = 0; game < 4; game++) {
+			RandomGame random = new RandomGame(rand, 0);
+			for (int ply = 0; ply < 120; ply++) {
+				if (ply % 15 == 0 || random.turn.isRemoveTurn()) {
+					checkPosition(random.player, random.turn);
+					positions++;
+					if (random.turn.isRemoveTurn())
+						removeTurns++;
+				}
+				if (!random.step())
+					break;
+			}
+		}
+		assertTrue(positions > 30, "too few positions checked: " + positions);
+		assertTrue(removeTurns > 0, "no remove turn checked");
+	}
+
+	// a few positions of a random game, both sides to move: pieces there have anything from no moves to dozens, so
+	// picking a piece first and then one of its moves would stand out well past the chi-square bound
+	@org.junit.jupiter.api.Test
+	void randomMoveIsUniform() {
+		Random rand = new Random(9);
+		RandomGame random = new RandomGame(rand, 0);
+		for (int ply = 0; ply < 42 && random.step(); ply++) {
+			if (ply < 2 || ply >= 40)
+				checkUniform(random.player, random.turn, rand);
+		}
+	}
+
+	private static void checkUniform(Player player, PlayState turn, Random rand) {
+		IntList generated = new IntList();
+		player.getPossibleMoves(turn, generated);
+		Map<Integer, Integer> counts = new HashMap<>();
+		for (int i = 0; i < generated.size(); i++)
+			counts.put(generated.get(i), 0);
+
+		int perMove = 200;
+		int samples = perMove * generated.size();
+		for (int i = 0; i < samples; i++) {
+			int move = player.randomMove(turn, rand);
+			if (!counts.containsKey(move))
+				fail("Random move not generated: " + Move.toString(move));
+			counts.put(move, counts.get(move) + 1);
+		}
+
+		// chi-square with generated.size() - 1 degrees of freedom, allowing 5 standard deviations over its mean
+		double chiSquare = 0;
+		for (int count : counts.values())
+			chiSquare += (double) (count - perMove) * (count - perMove) / perMove;
+		int freedom = generated.size() - 1;
+		double bound = freedom + 5 * Math.sqrt(2.0 * freedom);
+		assertTrue(chiSquare <= bound, "chi-square " + chiSquare + " over " + bound + " for " + generated.size() + " moves");
+	}
+
+	private static void checkPosition(Player player, PlayState turn) {
+		IntList generated = new IntList();
+		player.getPossibleMoves(turn, generated);
+		Set<Integer> generatedSet = new TreeSet<>();
+		for (int i = 0; i < generated.size(); i++) {
+			if (!generatedSet.add(generated.get(i)))
+				fail("Generated twice: " + Move.toString(generated.get(i)));
+		}
+		assertEquals(generated.size(), player.countPossibleMoves(turn), "countPossibleMoves");
+		// and piece by piece, on a remove turn the one move belongs to the anchor troll and no other square has any
+		int[] pieceMoves = new int[BitBoard.SQUARES];
+		for (int i = 0; i < generated.size(); i++)
+			pieceMoves[Move.from(generated.get(i))]++;
+		for (int square = 0; square < BitBoard.SQUARES; square++) {
+			if (turn.isRemoveTurn() || player.getBoard().getAtSquare(square) == turn.getTurn())
+				assertEquals(pieceMoves[square], player.countPieceMoves(turn, square),
+						"countPieceMoves of " + Move.squareName(square));
+		}
+
+		String board = player.getBoard().toString();
+		long key = player.getPositionKey(turn);
+		for (int i = 0; i < generated.size(); i++) {
+			if (!accepts(player, turn, generated.get(i)))
+				fail("Generated move rejected: " + Move.toString(generated.get(i)) + "\n" + board);
+			assertEquals(board, player.getBoard().toString(), "board after undo");
+			assertEquals(key, player.getPositionKey(turn), "key after undo");
+		}
+
+		if (turn.isRemoveTurn()) {
+			// the generator only offers taking every dwarf it can, any accepted capture must be part of that
+			int anchor = Move.from(generated.get(0));
+			int all = Move.captures(generated.get(0));
+			for (int captures = 0; captures < 256; captures++) {
+				if (accepts(player, turn, Move.encodeRemove(anchor, captures)) && (captures & ~all) != 0)
+					fail("Capture missed: " + Move.toString(Move.encodeRemove(anchor, captures)) + "\n" + board);
+			}
+			return;
+		}
+
+		BoardStates side = turn.getTurn();
+		int[] commands = (side == BoardStates.DWARF)
+				? new int[] {Move.MOVE, Move.HURL} : new int[] {Move.MOVE, Move.SHOVE};
+		for (int from = 0; from < BitBoard.SQUARES; from++) {
+			if (player.getBoard().getAtSquare(from) != side)
+				continue;
+			for (int to = 0; to < BitBoard.SQUARES; to++) {
+				for (int command : commands) {
+					int move = Move.encode(command, from, to);
+					if (accepts(player, turn, move) && !generatedSet.contains(move))
+						fail("Legal move not generated: " + Move.toString(move) + "\n" + board);
+				}
+			}
+		}
+		assertEquals(key, player.getPositionKey(turn), "key after rejected moves");
+	}
+
+	// whether play accepts the move, taking it back if it does
+	private static boolean accepts(Player player, PlayState turn, int move) {
+		try {
+			player.play(turn, move);
+		} catch (IllegalArgumentException ex) {
+			return false;
+		}
+		player.undo(turn);
+		return true;
+	}
+}
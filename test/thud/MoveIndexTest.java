@@ -0,0 +1,128 @@
+package thud;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Queueing of untried moves and the move to child lookup of MoveIndex.
+ */
+class MoveIndexTest {
+
+	// the opening position, dwarfs to move: 200 moves or so, with a spread of priors
+	private final Player player = new Player(new Board());
+	private final PlayState turn = player.initializeGame();
+	private final IntList moves = new IntList();
+	private final Random rand = new Random(21);
+
+	private IntList legalMoves() {
+		IntList legal = new IntList();
+		player.getPossibleMoves(turn, legal);
+		return legal;
+	}
+
+	// byPrior queues the BATCH best moves by Player.movePrior, best first
+	@org.junit.jupiter.api.Test
+	void refillQueuesBestPriorsFirst() {
+		MoveIndex index = new MoveIndex();
+		index.refill(player, turn, moves, rand, true);
+
+		Set<Integer> queued = new HashSet<>();
+		int lastPrior = Integer.MAX_VALUE;
+		while (!index.isQueueEmpty()) {
+			int move = index.nextUntried();
+			int prior = player.movePrior(move);
+			assertTrue(prior <= lastPrior, "queue out of prior order");
+			lastPrior = prior;
+			queued.add(move);
+		}
+		assertEquals(MoveIndex.BATCH, queued.size());
+
+		IntList legal = legalMoves();
+		for (int i = 0; i < legal.size(); i++) {
+			if (!queued.contains(legal.get(i)))
+				assertTrue(player.movePrior(legal.get(i)) <= lastPrior, "better move left out of the batch");
+		}
+	}
+
+	// moves of the same prior come in random order, so different trees widen into different moves
+	@org.junit.jupiter.api.Test
+	void refillBreaksPriorTiesAtRandom() {
+		Set<IntList> batches = new HashSet<>();
+		IntList firstPriors = null;
+		for (int seed = 0; seed < 5; seed++) {
+			MoveIndex index = new MoveIndex();
+			index.refill(player, turn, moves, new Random(seed), true);
+			IntList batch = new IntList(), priors = new IntList();
+			while (!index.isQueueEmpty()) {
+				int move = index.nextUntried();
+				batch.add(move);
+				priors.add(player.movePrior(move));
+			}
+			if (firstPriors == null)
+				firstPriors = priors;
+			assertEquals(firstPriors, priors);
+			batches.add(batch);
+		}
+		assertTrue(batches.size() > 1, "every refill queued the same moves in the same order");
+	}
+
+	// each refill queues moves not tried yet, until every move has been tried and the queue stays empty
+	@org.junit.jupiter.api.Test
+	void refillAfterExhaustionQueuesUntriedMoves() {
+		for (boolean byPrior : new boolean[] { true, false }) {
+			MoveIndex index = new MoveIndex();
+			IntList legal = legalMoves();
+			Set<Integer> tried = new HashSet<>();
+			int refills = 0;
+			while (true) {
+				index.refill(player, turn, moves, rand, byPrior);
+				if (index.isQueueEmpty())
+					break;
+				refills++;
+				while (!index.isQueueEmpty()) {
+					int move = index.nextUntried();
+					assertTrue(legal.contains(move), "not a legal move: " + Move.toString(move));
+					assertTrue(tried.add(move), "queued again after being tried: " + Move.toString(move));
+					index.putChild(move, tried.size());
+				}
+			}
+			assertEquals(legal.size(), tried.size());
+			assertEquals((legal.size() + MoveIndex.BATCH - 1) / MoveIndex.BATCH, refills);
+		}
+	}
+
+	// a move handed back comes out of the queue again next, and isn't lost to a refill
+	@org.junit.jupiter.api.Test
+	void returnUntriedPutsMoveBack() {
+		MoveIndex index = new MoveIndex();
+		index.refill(player, turn, moves, rand, true);
+		int first = index.nextUntried();
+		index.returnUntried();
+		assertEquals(first, index.nextUntried());
+
+		int second = index.nextUntried();
+		index.returnUntried();
+		assertFalse(index.isQueueEmpty());
+		assertEquals(second, index.nextUntried());
+		assertEquals(NodeArena.NONE, index.child(second));
+	}
+
+	// the table grows as children are added, every child must still be found afterwards
+	@org.junit.jupiter.api.Test
+	void childLookupSurvivesRehash() {
+		MoveIndex index = new MoveIndex();
+		IntList legal = legalMoves();
+		for (int i = 0; i < legal.size(); i++) {
+			index.putChild(legal.get(i), 1000 + i);
+			for (int j = 0; j < legal.size(); j++) {
+				int expected = (j <= i) ? 1000 + j : NodeArena.NONE;
+				assertEquals(expected, index.child(legal.get(j)), "after " + (i + 1) + " children");
+			}
+		}
+	}
+}
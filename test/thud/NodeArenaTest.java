@@ -0,0 +1,160 @@
+package thud;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Size accounting, node reuse and pruning of NodeArena, on small hand built trees.
+ */
+class NodeArenaTest {
+
+	// a node with the given visits linked under parent (NONE for a root), its move is its number among its siblings
+	private static int node(NodeArena arena, int parent, int visits) {
+		int move = (parent == NodeArena.NONE) ? Move.NONE : arena.childCount(parent);
+		int node = arena.allocate(move, parent, 0, BoardStates.DWARF, 10);
+		arena.addStats(node, (long) visits << 32);
+		if (parent != NodeArena.NONE) {
+			if (arena.moveIndex(parent) == null)
+				arena.setMoveIndex(parent, new MoveIndex());
+			arena.addChild(parent, node);
+		}
+		return node;
+	}
+
+	// root (1000 visits) with four children of 400, 300, 200 and 100 visits, each with three children of a third of
+	// that, each with two leaves: 41 nodes
+	private static int buildTree(NodeArena arena) {
+		int root = node(arena, NodeArena.NONE, 1000);
+		for (int visits = 400; visits > 0; visits -= 100) {
+			int child = node(arena, root, visits);
+			for (int i = 0; i < 3; i++) {
+				int grandchild = node(arena, child, visits / 3);
+				node(arena, grandchild, visits / 6);
+				node(arena, grandchild, visits / 6);
+			}
+		}
+		return root;
+	}
+
+	// number of nodes reachable from node, itself included
+	private static int countSubtree(NodeArena arena, int node) {
+		int count = 1;
+		for (int child = arena.firstChild(node); child != NodeArena.NONE; child = arena.sibling(child)) {
+			assertEquals(node, arena.parent(child), "parent of a child");
+			count += countSubtree(arena, child);
+		}
+		return count;
+	}
+
+	@org.junit.jupiter.api.Test
+	void freeExceptKeepsOnlyTheSubtree() {
+		NodeArena arena = new NodeArena(100);
+		int root = buildTree(arena);
+		assertEquals(41, arena.size());
+
+		int keep = arena.findChild(root, 1);
+		assertEquals(300, TranspositionTable.visits(arena.stats(keep)));
+		arena.freeExcept(root, keep);
+		assertEquals(10, arena.size());
+		assertEquals(10, countSubtree(arena, keep));
+
+		arena.freeExcept(keep, NodeArena.NONE);
+		assertEquals(0, arena.size());
+	}
+
+	@org.junit.jupiter.api.Test
+	void allocateFailsWhenFull() {
+		NodeArena arena = new NodeArena(3);
+		int root = node(arena, NodeArena.NONE, 0);
+		node(arena, root, 0);
+		node(arena, root, 0);
+		assertTrue(arena.isFull());
+		assertEquals(NodeArena.NONE, arena.allocate(0, root, 0, BoardStates.DWARF, 0));
+
+		arena.freeExcept(root, NodeArena.NONE);
+		assertFalse(arena.isFull());
+		assertTrue(arena.allocate(0, NodeArena.NONE, 0, BoardStates.DWARF, 0) != NodeArena.NONE);
+	}
+
+	// a budget just over a page fills its last page to the end, and after freeing every node fills again
+	@org.junit.jupiter.api.Test
+	void allocateFillsTheBudget() {
+		int budget = (1 << 14) + 3;
+		NodeArena arena = new NodeArena(budget);
+		for (int round = 0; round < 2; round++) {
+			int root = node(arena, NodeArena.NONE, 0);
+			while (!arena.isFull())
+				assertTrue(node(arena, root, 0) < budget, "index past the budget");
+			assertEquals(budget, arena.size());
+			assertEquals(budget, countSubtree(arena, root));
+			assertEquals(NodeArena.NONE, arena.allocate(0, root, 0, BoardStates.DWARF, 0));
+
+			arena.freeExcept(root, NodeArena.NONE);
+			assertEquals(0, arena.size());
+		}
+	}
+
+	@org.junit.jupiter.api.Test
+	void freedNodesAreReusedFirst() {
+		NodeArena arena = new NodeArena(100);
+		int root = buildTree(arena);
+		// a fresh arena hands out indices in order
+		int highest = 40;
+
+		int keep = arena.findChild(root, 0);
+		arena.freeExcept(root, keep);
+		arena.setParent(keep, NodeArena.NONE);
+		assertEquals(10, arena.size());
+
+		// the 31 freed indices come back before any new one, and as fresh nodes
+		Set<Integer> reused = new HashSet<>();
+		for (int i = 0; i < 31; i++) {
+			int node = arena.allocate(7, keep, 42, BoardStates.TROLL, 5);
+			assertTrue(node <= highest, "new index " + node + " while freed ones were left");
+			assertTrue(reused.add(node), "index handed out twice: " + node);
+			assertEquals(0, arena.stats(node));
+			assertEquals(0, arena.childCount(node));
+			assertEquals(NodeArena.NONE, arena.firstChild(node));
+			assertEquals(keep, arena.parent(node));
+			assertEquals(7, arena.move(node));
+			assertEquals(5, arena.moveCount(node));
+			assertEquals(BoardStates.TROLL, arena.turn(node));
+		}
+		assertEquals(highest + 1, arena.allocate(0, keep, 0, BoardStates.DWARF, 0));
+		assertEquals(42, arena.size());
+	}
+
+	@org.junit.jupiter.api.Test
+	void pruneKeepsRootAndChildren() {
+		NodeArena arena = new NodeArena(100);
+		int root = buildTree(arena);
+		int[] children = new int[4];
+		for (int move = 0; move < 4; move++)
+			children[move] = arena.findChild(root, move);
+
+		assertEquals(0, arena.prune(root, 41));
+
+		int freed = arena.prune(root, 20);
+		assertEquals(41 - freed, arena.size());
+		assertTrue(arena.size() <= 20, "size after prune " + arena.size());
+		assertEquals(arena.size(), countSubtree(arena, root));
+
+		assertEquals(4, arena.childCount(root));
+		for (int move = 0; move < 4; move++) {
+			assertEquals(children[move], arena.findChild(root, move));
+			assertEquals(root, arena.parent(children[move]));
+		}
+		// the least visited subtrees go first
+		assertTrue(arena.childCount(children[0]) > 0, "most visited child lost its subtree");
+		assertEquals(0, arena.childCount(children[3]));
+
+		// down to the root and its children at most, however low the target
+		arena.prune(root, 0);
+		assertEquals(5, arena.size());
+		assertEquals(5, countSubtree(arena, root));
+	}
+}
@@ -0,0 +1,109 @@
+package thud;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Books written by OpeningBookBuilder and read back through OpeningBook.
+ */
+class OpeningBookTest {
+
+	@TempDir
+	Path dir;
+
+	private static IntList game(String... moves) {
+		Player player = new Player(new Board());
+		player.replayMoveLog(Arrays.asList(moves));
+		return player.getMoveLog();
+	}
+
+	// key of the position after the given moves from the opening
+	private static long keyAfter(String... moves) {
+		Player player = new Player(new Board());
+		PlayState turn = player.replayMoveLog(Arrays.asList(moves));
+		return player.getPositionKey(turn);
+	}
+
+	private static int move(String text) {
+		return Move.parse(text, Move.NONE);
+	}
+
+	@org.junit.jupiter.api.Test
+	void builtBookRoundTrips() throws IOException {
+		OpeningBookBuilder builder = new OpeningBookBuilder();
+		// the hurl leaves the dwarfs ahead, so this one is a dwarf win
+		builder.addGame(game("M A7 E7", "M G7 F7", "R", "H E7 F7"));
+		// level at the end, neither side wins
+		builder.addGame(game("M A7 D7"));
+		builder.addGame(game("M A7 D7", "M G7 F7"));
+		Path file = dir.resolve("book.bin");
+		builder.write(file);
+
+		OpeningBook book = OpeningBook.open(file);
+		// start: A7 D7 (2 games) and A7 E7 (1), after A7 E7: G7 F7, R, H E7 F7, after A7 D7: G7 F7
+		assertEquals(builder.size(), book.size());
+		assertEquals(6, book.size());
+
+		long start = keyAfter();
+		assertEquals(move("M A7 D7"), book.bestMove(start, 1));
+		assertEquals(move("M A7 D7"), book.bestMove(start, 2));
+		assertEquals(Move.NONE, book.bestMove(start, 3));
+
+		// the trolls answered both dwarf moves with G7 F7, once each
+		assertEquals(move("M G7 F7"), book.bestMove(keyAfter("M A7 E7"), 1));
+		assertEquals(move("M G7 F7"), book.bestMove(keyAfter("M A7 D7"), 1));
+		assertEquals(Move.NONE, book.bestMove(keyAfter("M A7 E7"), 2));
+
+		// a position no game reached, and keys either side of every entry
+		assertEquals(Move.NONE, book.bestMove(keyAfter("M A7 C7"), 1));
+		assertEquals(Move.NONE, book.bestMove(Long.MIN_VALUE, 1));
+		assertEquals(Move.NONE, book.bestMove(Long.MAX_VALUE, 1));
+	}
+
+	// with as many games for each move, the one that won more is played
+	@org.junit.jupiter.api.Test
+	void tiesGoToMoreWins() throws IOException {
+		OpeningBookBuilder builder = new OpeningBookBuilder();
+		builder.addGame(game("M A7 D7"));
+		builder.addGame(game("M A7 E7", "M G7 F7", "R", "H E7 F7"));
+		Path file = dir.resolve("ties.bin");
+		builder.write(file);
+
+		assertEquals(move("M A7 E7"), OpeningBook.open(file).bestMove(keyAfter(), 1));
+	}
+
+	// only the first maxPly plies of a game go in
+	@org.junit.jupiter.api.Test
+	void maxPlyLimitsEntries() throws IOException {
+		OpeningBookBuilder builder = new OpeningBookBuilder(2);
+		builder.addGame(game("M A7 E7", "M G7 F7", "R", "H E7 F7"));
+		Path file = dir.resolve("short.bin");
+		builder.write(file);
+
+		OpeningBook book = OpeningBook.open(file);
+		assertEquals(2, book.size());
+		assertEquals(Move.NONE, book.bestMove(keyAfter("M A7 E7", "M G7 F7"), 1));
+	}
+
+	@org.junit.jupiter.api.Test
+	void rejectsOtherFiles() throws IOException {
+		Path file = dir.resolve("not-a-book.bin");
+		Files.write(file, new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13});
+		assertThrows(IOException.class, () -> OpeningBook.open(file));
+
+		OpeningBookBuilder builder = new OpeningBookBuilder();
+		builder.addGame(game("M A7 E7"));
+		Path book = dir.resolve("truncated.bin");
+		builder.write(book);
+		byte[] bytes = Files.readAllBytes(book);
+		Files.write(book, Arrays.copyOf(bytes, bytes.length - 1));
+		assertThrows(IOException.class, () -> OpeningBook.open(book));
+	}
+}
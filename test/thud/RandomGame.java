@@ -0,0 +1,52 @@
+package thud;
+
+import java.util.Random;
+
+/**
+ * A game of random legal moves from the opening, for tests that check what is kept up to date move by move against a
+ * recount: each step plays a move, or now and then takes the last play back instead.
+ */
+class RandomGame {
+	final Player player = new Player(new Board());
+	final PlayState turn = player.initializeGame();
+
+	private final Random rand;
+	private final int undoOdds;
+	private final IntList moves = new IntList();
+	private boolean undid;
+
+	// one step in undoOdds takes back a play when there is one to take back, 0 never does
+	RandomGame(Random rand, int undoOdds) {
+		this.rand = rand;
+		this.undoOdds = undoOdds;
+	}
+
+	Board board() {
+		return player.getBoard();
+	}
+
+	// plays a random move or undoes the last play, false (and nothing done) once the side to move has no moves
+	boolean step() {
+		undid = undoOdds > 0 && player.getMoveLog().size() > 0 && rand.nextInt(undoOdds) == 0;
+		if (undid) {
+			player.undo(turn);
+			return true;
+		}
+		player.getPossibleMoves(turn, moves);
+		if (moves.isEmpty())
+			return false;
+		player.play(turn, moves.get(rand.nextInt(moves.size())));
+		return true;
+	}
+
+	// whether the last step was an undo
+	boolean undid() {
+		return undid;
+	}
+
+	// takes back every play, back to the opening
+	void undoAll() {
+		while (player.getMoveLog().size() > 0)
+			player.undo(turn);
+	}
+}
@@ -0,0 +1,60 @@
+package thud;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Packing of visits and wins into one long, and what the table keeps per key.
+ */
+class TranspositionTableTest {
+
+	@org.junit.jupiter.api.Test
+	void packedStatsRoundTrip() {
+		int[][] cases = {
+				{0, 0}, {1, 1}, {1, -1}, {5, -5}, {1000, 3}, {1000, -999},
+				{Integer.MAX_VALUE, Integer.MAX_VALUE}, {Integer.MAX_VALUE, -Integer.MAX_VALUE}
+		};
+		for (int[] c : cases) {
+			long stats = ((long) c[0] << 32) + c[1];
+			assertEquals(c[0], TranspositionTable.visits(stats), "visits of " + c[0] + "/" + c[1]);
+			assertEquals(c[1], TranspositionTable.wins(stats), "wins of " + c[0] + "/" + c[1]);
+		}
+	}
+
+	// losses are added as negative wins, the running total may go below zero and back
+	@org.junit.jupiter.api.Test
+	void addAccumulatesNegativeWins() {
+		TranspositionTable table = new TranspositionTable(4);
+		long key = 0x123456789ABCDEFL;
+		table.add(key, -1);
+		table.add(key, -1);
+		table.add(key, 1);
+		table.add(key, 3, -3);
+
+		long stats = table.get(key);
+		assertEquals(6, TranspositionTable.visits(stats));
+		assertEquals(-4, TranspositionTable.wins(stats));
+
+		table.add(key, 10, 10);
+		stats = table.get(key);
+		assertEquals(16, TranspositionTable.visits(stats));
+		assertEquals(6, TranspositionTable.wins(stats));
+	}
+
+	// a key sharing a slot takes it over, the old key then reads as unvisited
+	@org.junit.jupiter.api.Test
+	void collidingKeyReplacesSlot() {
+		TranspositionTable table = new TranspositionTable(4);
+		long key = 5;
+		long other = key + (1L << 40);  // same low bits, and the high half doesn't reach the 4 bit index
+		table.add(key, 2, -2);
+		assertEquals(0, TranspositionTable.visits(table.get(other)));
+
+		table.add(other, 1);
+		assertEquals(0, TranspositionTable.visits(table.get(key)));
+		assertEquals(1, TranspositionTable.visits(table.get(other)));
+		assertEquals(1, TranspositionTable.wins(table.get(other)));
+
+		table.clear();
+		assertEquals(0, table.get(other));
+	}
+}
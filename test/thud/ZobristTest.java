@@ -0,0 +1,60 @@
+package thud;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The keys Board and PlayState keep up to date move by move must match a key computed from scratch.
+ */
+class ZobristTest {
+
+	// what Player.getPositionKey should come to, from the board and turn alone
+	private static long keyFromScratch(Player player, PlayState turn) {
+		Board board = player.getBoard();
+		long key = 0;
+		for (int square = 0; square < BitBoard.SQUARES; square++)
+			key ^= Zobrist.pieceKey(board.getAtSquare(square), square);
+		key ^= Zobrist.turnKey(turn.getTurn(), turn.isRemoveTurn());
+		if (turn.isRemoveTurn()) {
+			int previous = player.getLastMoveCode();
+			key ^= Zobrist.REMOVE_ANCHOR[Move.to(previous)];
+			if (Move.command(previous) == Move.SHOVE)
+				key ^= Zobrist.MUST_REMOVE;
+		}
+		return key;
+	}
+
+	// random games, taking back a play now and then, checking the keys after every play and undo
+	@org.junit.jupiter.api.Test
+	void incrementalKeysMatchScratch() {
+		Random rand = new Random(4);
+		for (int game = 0; game < 20; game++) {
+			RandomGame random = new RandomGame(rand, 4);
+			Player player = random.player;
+			PlayState turn = random.turn;
+			long startKey = player.getPositionKey(turn);
+			assertEquals(keyFromScratch(player, turn), startKey);
+
+			for (int ply = 0; ply < 150 && random.step(); ply++)
+				assertEquals(keyFromScratch(player, turn), player.getPositionKey(turn), "after ply " + ply);
+
+			// and all the way back to the start
+			random.undoAll();
+			assertEquals(startKey, player.getPositionKey(turn));
+		}
+	}
+
+	// a copied board carries its key along, through a remove turn too
+	@org.junit.jupiter.api.Test
+	void copiedBoardKeepsKey() {
+		Player player = new Player(new Board());
+		PlayState turn = player.initializeGame();
+		player.play(turn, "M A7 E7");
+		player.play(turn, "M G7 F7");
+		player.play(turn, "R");
+
+		assertEquals(player.getBoard().getHash(), new Board(player.getBoard()).getHash());
+		assertEquals(keyFromScratch(player, turn), player.getPositionKey(turn));
+	}
+}